@@ -0,0 +1,34 @@
+package org.toex;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1) // the default stack size, one long code block must not overflow it
+public class CodeBlockBenchmark { // one fenced code block with many lines, the time should grow linearly with the lines
+
+    @Param({"1000", "10000", "100000"})
+    int lines;
+
+    private final MDParser parser = new MDParser();
+    private String markdown;
+
+    @Setup
+    public void setup() {
+        StringBuilder md = new StringBuilder("```java\n");
+        for (int line = 0; line < lines; line++) {
+            md.append("int x").append(line).append(" = ").append(line).append(";\n");
+        }
+        markdown = md.append("```\n").toString();
+    }
+
+    @Benchmark
+    public HTMLElement compile() {
+        return parser.compile(markdown);
+    }
+}
@@ -0,0 +1,106 @@
+package org.toex;
+
+import java.util.Random;
+
+public class Corpus { // generated Markdown documents in the style of markdown.md, the same for every run
+
+    public enum Shape { HEADINGS, NESTED_LISTS, CODE_FENCES, EMPHASIS, MIXED }
+
+    public enum Size {
+        SMALL(2 * 1024), MEDIUM(64 * 1024), LARGE(1024 * 1024), HUGE(8 * 1024 * 1024);
+
+        final int chars; // the document is generated until it has at least this many characters
+
+        Size(int chars) {
+            this.chars = chars;
+        }
+    }
+
+    private static final String[] WORDS = {
+            "Markdown", "is", "a", "lightweight", "markup", "language", "used", "to", "create", "formatted",
+            "text", "using", "plain", "editor", "easy", "learn", "and", "widely", "documentation", "wikis"
+    };
+
+    public static String generate(Shape shape, Size size) {
+        Random random = new Random(42); // fixed seed, so every fork parses the same text
+        StringBuilder md = new StringBuilder(size.chars + 1024);
+        int section = 0;
+        while (md.length() < size.chars) {
+            Shape next = shape == Shape.MIXED ? Shape.values()[section % (Shape.values().length - 1)] : shape;
+            switch (next) {
+                case HEADINGS -> headings(md, random, section);
+                case NESTED_LISTS -> nestedLists(md, random);
+                case CODE_FENCES -> codeFences(md, random, section);
+                case EMPHASIS -> emphasis(md, random);
+            }
+            section++;
+        }
+        return md.toString();
+    }
+
+    private static void headings(StringBuilder md, Random random, int section) {
+        md.append("# Section ").append(section).append('\n');
+        sentence(md, random, 12).append('\n');
+        for (int level = 2; level <= 6; level++) {
+            md.append("#".repeat(level)).append(' ');
+            sentence(md, random, 3).append('\n');
+            sentence(md, random, 8).append("\n\n");
+        }
+    }
+
+    private static void nestedLists(StringBuilder md, Random random) {
+        for (int item = 1; item <= 3; item++) {
+            md.append(item).append(". ");
+            sentence(md, random, 3).append('\n');
+            for (int child = 0; child < 2; child++) {
+                md.append("    - ");
+                sentence(md, random, 4).append('\n');
+                md.append("        - ");
+                sentence(md, random, 2).append('\n');
+            }
+        }
+        md.append('\n');
+        for (int item = 0; item < 3; item++) {
+            md.append("- **");
+            sentence(md, random, 2).append("**\n");
+            md.append("    1. ");
+            sentence(md, random, 3).append('\n');
+            md.append("    2. ");
+            sentence(md, random, 3).append('\n');
+        }
+        md.append('\n');
+    }
+
+    private static void codeFences(StringBuilder md, Random random, int section) {
+        md.append("Here is an example of a function:\n\n");
+        md.append("```python\n");
+        md.append("def factorial_").append(section).append("(n):\n");
+        md.append("    if n == 0 or n == 1:\n");
+        md.append("        return 1\n");
+        md.append("    else:\n");
+        md.append("        return n * factorial(n - 1)\n");
+        md.append("print(factorial(").append(random.nextInt(10)).append("))  # Output\n");
+        md.append("```\n");
+        md.append("You can also inline code like this: `console.log('Hello, Markdown!');`.\n\n");
+    }
+
+    private static void emphasis(StringBuilder md, Random random) {
+        for (int line = 0; line < 4; line++) {
+            sentence(md, random, 3).append(" **");
+            sentence(md, random, 2).append("** and *");
+            sentence(md, random, 2).append("* or ~~");
+            sentence(md, random, 2).append("~~ with `code`, a [link](https://example.com/");
+            md.append(random.nextInt(100)).append(") and ![image](https://example.com/image.png) ");
+            sentence(md, random, 4).append('\n');
+        }
+        md.append("> **Tip:** ");
+        sentence(md, random, 6).append("\n\n");
+    }
+
+    private static StringBuilder sentence(StringBuilder md, Random random, int words) {
+        for (int w = 0; w < words; w++) {
+            md.append(w == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return md;
+    }
+}
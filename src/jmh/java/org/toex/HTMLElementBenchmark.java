@@ -0,0 +1,37 @@
+package org.toex;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HTMLElementBenchmark { // throughput of rendering a parsed tree, run with -prof gc for the allocation rate
+
+    @Param({"HEADINGS", "NESTED_LISTS", "CODE_FENCES", "EMPHASIS", "MIXED"})
+    Corpus.Shape shape;
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    Corpus.Size size;
+
+    private HTMLElement html;
+
+    @Setup
+    public void setup() {
+        html = new MDParser().compile(Corpus.generate(shape, size)); // the tree is parsed once, only rendering is measured
+    }
+
+    @Benchmark
+    public String render() {
+        return html.toString();
+    }
+
+    @Benchmark
+    public String createDocument() {
+        return html.createDocument();
+    }
+}
@@ -0,0 +1,38 @@
+package org.toex;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MDParserBenchmark { // throughput of the parsing stages, run with -prof gc for the allocation rate
+
+    @Param({"HEADINGS", "NESTED_LISTS", "CODE_FENCES", "EMPHASIS", "MIXED"})
+    Corpus.Shape shape;
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    Corpus.Size size;
+
+    private final MDParser parser = new MDParser();
+    private String markdown;
+
+    @Setup
+    public void setup() {
+        markdown = Corpus.generate(shape, size);
+    }
+
+    @Benchmark
+    public String precompile() {
+        return parser.precompile(markdown);
+    }
+
+    @Benchmark
+    public HTMLElement compile() {
+        return parser.compile(markdown);
+    }
+}
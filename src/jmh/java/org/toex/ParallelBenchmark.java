@@ -0,0 +1,38 @@
+package org.toex;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelBenchmark { // one large document on one core and on all cores, the speedup needs a machine with 8 cores or more
+
+    @Param({"HEADINGS", "CODE_FENCES", "EMPHASIS", "MIXED"}) // nested lists become one part, see MDParser.Splitter
+    Corpus.Shape shape;
+
+    @Param({"LARGE", "HUGE"})
+    Corpus.Size size;
+
+    private final MDParser parser = new MDParser();
+    private String markdown;
+
+    @Setup
+    public void setup() {
+        markdown = Corpus.generate(shape, size);
+    }
+
+    @Benchmark
+    public HTMLElement sequential() {
+        return parser.compile(markdown);
+    }
+
+    @Benchmark
+    public HTMLElement parallel() {
+        return parser.compileParallel(markdown);
+    }
+}
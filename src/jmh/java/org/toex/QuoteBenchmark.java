@@ -0,0 +1,34 @@
+package org.toex;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1) // the default stack size, deep quotes must not overflow it
+public class QuoteBenchmark { // quotes nested one level deeper on every line, the time should grow linearly with the characters
+
+    @Param({"100", "200", "400", "800"})
+    int depth;
+
+    private final MDParser parser = new MDParser();
+    private String markdown;
+
+    @Setup
+    public void setup() {
+        StringBuilder md = new StringBuilder();
+        for (int level = 1; level <= depth; level++) { // depth * depth / 2 characters
+            md.append(">".repeat(level)).append(" text of level ").append(level).append('\n');
+        }
+        markdown = md.toString();
+    }
+
+    @Benchmark
+    public HTMLElement compile() {
+        return parser.compile(markdown);
+    }
+}
@@ -0,0 +1,83 @@
+package org.toex;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ServerLoad { // latency of ConvertServer under load, run with java -cp target/benchmarks.jar org.toex.ServerLoad [clients] [requests] [url] [--metrics]
+
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<>(List.of(args));
+        boolean metrics = arguments.remove("--metrics"); // like Main --serve --metrics
+        int clients = arguments.size() > 0 ? Integer.parseInt(arguments.get(0)) : 16;
+        int requests = arguments.size() > 1 ? Integer.parseInt(arguments.get(1)) : 20000;
+        ConvertServer server = null;
+        URI uri;
+        if (arguments.size() > 2) { // a server that runs already
+            uri = URI.create(arguments.get(2));
+        } else {
+            server = Main.server(clients, 4 << 20, metrics); // configured like the server of Main --serve
+            int port = server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            uri = URI.create("http://localhost:" + port + "/convert");
+        }
+        String[] bodies = new String[Corpus.Shape.values().length];
+        for (Corpus.Shape shape : Corpus.Shape.values()) {
+            bodies[shape.ordinal()] = Corpus.generate(shape, Corpus.Size.SMALL);
+        }
+        try (HttpClient client = HttpClient.newHttpClient()) {
+            run(client, uri, bodies, clients, requests / 4); // warm up the JIT of both sides
+            long start = System.nanoTime();
+            long[] latencies = run(client, uri, bodies, clients, requests);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            Arrays.sort(latencies);
+            System.out.printf("%d requests from %d clients in %.2f s: %.0f requests/s%n", requests, clients, seconds, requests / seconds);
+            System.out.printf("p50 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                    percentile(latencies, 50) / 1e6, percentile(latencies, 99) / 1e6, latencies[latencies.length - 1] / 1e6);
+        } finally {
+            if (server != null) {
+                server.stop(0);
+            }
+        }
+    }
+
+    private static long[] run(HttpClient client, URI uri, String[] bodies, int clients, int requests) throws InterruptedException {
+        long[] latencies = new long[requests];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < clients; c++) {
+                executor.submit(() -> {
+                    for (int r; (r = next.getAndIncrement()) < requests; ) {
+                        HttpRequest request = HttpRequest.newBuilder(uri)
+                                .POST(HttpRequest.BodyPublishers.ofString(bodies[r % bodies.length])).build();
+                        long start = System.nanoTime();
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        latencies[r] = System.nanoTime() - start;
+                        if (response.statusCode() != 200) {
+                            rejected.incrementAndGet();
+                        }
+                    }
+                    return null;
+                });
+            }
+        }
+        if (rejected.get() > 0) {
+            System.out.println(rejected.get() + " requests were not converted");
+        }
+        return latencies;
+    }
+
+    private static long percentile(long[] sorted, double percentile) { // nearest rank
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+}
@@ -0,0 +1,76 @@
+package org.toex;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TocBenchmark { // table of contents from the tree and from the events, run with -prof gc to compare the allocations
+
+    @Param({"HEADINGS", "NESTED_LISTS", "CODE_FENCES", "EMPHASIS", "MIXED"})
+    Corpus.Shape shape;
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    Corpus.Size size;
+
+    private final MDParser parser = new MDParser();
+    private String markdown;
+
+    @Setup
+    public void setup() {
+        markdown = Corpus.generate(shape, size);
+    }
+
+    @Benchmark
+    public List<String> tree() {
+        List<String> toc = new ArrayList<>();
+        collect(parser.compile(markdown), toc);
+        return toc;
+    }
+
+    @Benchmark
+    public List<String> events() {
+        List<String> toc = new ArrayList<>();
+        parser.compile(markdown, new MDListener() {
+            private StringBuilder heading; // text of the open heading
+
+            @Override
+            public void startHeading(int level) {
+                heading = new StringBuilder();
+            }
+
+            @Override
+            public void text(CharSequence text) {
+                if (heading != null) heading.append(text);
+            }
+
+            @Override
+            public void endHeading(int level) {
+                toc.add("#".repeat(level) + " " + heading);
+                heading = null;
+            }
+        });
+        return toc;
+    }
+
+    private static void collect(HTMLElement html, List<String> toc) {
+        for (int c = 0; c < html.childCount(); c++) {
+            if (!(html.children.get(c) instanceof HTMLElement child)) {
+                continue; // text
+            }
+            String name = child.tag != null ? child.tag.getName() : "";
+            if (name.length() == 2 && name.charAt(0) == 'h' && Character.isDigit(name.charAt(1))) {
+                toc.add("#".repeat(name.charAt(1) - '0') + " " + ((HTMLText) child.children.get(0)).getData());
+            } else {
+                collect(child, toc);
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package org.toex;
+
+import java.lang.management.ManagementFactory;
+
+public class TreeHeapReport { // retained heap of compiled trees, run with java -cp target/benchmarks.jar org.toex.TreeHeapReport [trees] [size]
+
+    public static void main(String[] args) {
+        int trees = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        Corpus.Size size = args.length > 1 ? Corpus.Size.valueOf(args[1]) : Corpus.Size.LARGE;
+        MDParser parser = new MDParser();
+        System.out.printf("%-14s %12s %12s%n", "shape", "chars", "bytes/tree");
+        for (Corpus.Shape shape : Corpus.Shape.values()) {
+            String markdown = Corpus.generate(shape, size);
+            parser.compile(markdown); // load and warm up everything the parser keeps itself
+            long before = used();
+            HTMLElement[] kept = new HTMLElement[trees]; // the trees stay reachable until the heap is measured
+            for (int t = 0; t < trees; t++) {
+                kept[t] = parser.compile(markdown);
+            }
+            long after = used();
+            System.out.printf("%-14s %12d %12d%n", shape, markdown.length(), (after - before) / kept.length);
+        }
+    }
+
+    private static long used() { // the heap in use after the garbage is collected
+        for (int gc = 0; gc < 4; gc++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
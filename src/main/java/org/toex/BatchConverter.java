@@ -0,0 +1,109 @@
+package org.toex;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+public class BatchConverter { // converts a whole directory tree of Markdown files with one shared parser
+
+    public record Failure(Path file, Throwable error) {}
+
+    public record Result(int files, long bytes, long nanos, List<Failure> failures) {
+        public double filesPerSecond() {
+            return nanos == 0 ? 0 : files * 1e9 / nanos;
+        }
+
+        public double bytesPerSecond() {
+            return nanos == 0 ? 0 : bytes * 1e9 / nanos;
+        }
+    }
+
+    private final MDParser parser;
+    private final int workers; // maximum number of files converted at the same time
+    private final RenderCache cache; // null if every file is parsed completely
+
+    public BatchConverter(MDParser parser, int workers) {
+        this(parser, workers, null);
+    }
+
+    public BatchConverter(MDParser parser, int workers, RenderCache cache) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Mindestens ein Worker wird benötigt.");
+        }
+        this.parser = parser;
+        this.workers = workers;
+        this.cache = cache;
+    }
+
+    public Result convert(Path inputDir, Path outputDir) throws IOException, InterruptedException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(inputDir)) { // collect all Markdown files of the tree
+            files = walk.filter(Files::isRegularFile).filter(BatchConverter::isMarkdown).sorted().toList();
+        }
+        AtomicInteger converted = new AtomicInteger();
+        AtomicLong bytes = new AtomicLong();
+        List<Failure> failures = Collections.synchronizedList(new ArrayList<>());
+        Semaphore slots = new Semaphore(workers); // bounds the work in flight, not only the running threads
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Path file : files) {
+                slots.acquire();
+                executor.submit(() -> {
+                    try {
+                        bytes.addAndGet(convertFile(file, target(inputDir, outputDir, file)));
+                        converted.incrementAndGet();
+                    } catch (Throwable e) { // Errors too, the StackOverflowError of one deep file is its own failure
+                        failures.add(new Failure(file, e)); // one broken file does not stop the run
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+        } // close() waits for all submitted files
+        return new Result(converted.get(), bytes.get(), System.nanoTime() - start, List.copyOf(failures));
+    }
+
+    private long convertFile(Path source, Path target) throws IOException {
+        long size = Files.size(source);
+        String markdown = Files.readString(source);
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp"); // the target only changes if everything is written
+        try {
+            if (cache != null) {
+                Files.writeString(temp, cache.renderDocument(parser, markdown)); // only changed blocks are parsed
+            } else {
+                HTMLElement html = parser.compile(markdown);
+                try (BufferedWriter writer = Files.newBufferedWriter(temp)) {
+                    html.writeDocument(writer, parser.getMetrics()); // stream the document into the file
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return size;
+    }
+
+    private static Path target(Path inputDir, Path outputDir, Path file) { // same place in the mirrored tree
+        Path relative = inputDir.relativize(file);
+        String name = relative.getFileName().toString();
+        String html = name.substring(0, name.lastIndexOf('.')) + ".html";
+        return outputDir.resolve(relative).resolveSibling(html);
+    }
+
+    private static boolean isMarkdown(Path file) {
+        String name = file.getFileName().toString().toLowerCase();
+        return name.endsWith(".md") || name.endsWith(".markdown");
+    }
+}
@@ -0,0 +1,97 @@
+package org.toex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class BlockEmitter { // passes the blocks of one document on to a listener, lists are closed when a block goes somewhere else
+
+    static final class Container { // the document or one of its lists, blocks are added to it
+        final Container parent;
+        final boolean ordered;
+        HTMLElement recorded; // the element events for this container are recorded into
+
+        Container(Container parent, boolean ordered) {
+            this.parent = parent;
+            this.ordered = ordered;
+        }
+    }
+
+    private final MDListener listener;
+    private final Container root = new Container(null, false);
+    private Container current = root; // innermost open container, everything between it and root is open too
+    private TreeBuilder recorder; // not null while the events are recorded
+    private final List<Container> path = new ArrayList<>(); // containers that were open when the recording started
+
+    BlockEmitter(MDListener listener) {
+        this.listener = listener;
+    }
+
+    Container root() {
+        return root;
+    }
+
+    MDListener at(Container target) { // the listener for a block that is added to target
+        if (recorder != null) {
+            recorder.current = target.recorded;
+            return recorder;
+        }
+        while (current != target) { // the lists below target are done
+            if (current == root) {
+                throw new IllegalStateException("Die Liste wurde schon geschlossen.");
+            }
+            listener.endList(current.ordered);
+            current = current.parent;
+        }
+        return listener;
+    }
+
+    Container startList(Container target, boolean ordered) {
+        Container list = new Container(target, ordered);
+        at(target).startList(ordered);
+        if (recorder != null) {
+            list.recorded = recorder.current;
+        } else {
+            current = list;
+        }
+        return list;
+    }
+
+    void record() { // a list inside a list item can add blocks to lists that were closed already, keep the events until flush
+        if (recorder != null) {
+            return;
+        }
+        for (Container c = current; c != null; c = c.parent) {
+            path.add(0, c);
+        }
+        HTMLElement parent = null;
+        for (Container c : path) { // stand-ins for the open containers, their earlier content was passed on already
+            c.recorded = parent == null ? new HTMLElement() : new HTMLElement(c.ordered ? "ol" : "ul", (HTMLElement) null);
+            if (parent != null) {
+                try {
+                    parent.add(c.recorded);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            parent = c.recorded;
+        }
+        recorder = new TreeBuilder(root.recorded);
+    }
+
+    void flush() { // closes all lists, the recorded events are passed on in document order
+        if (recorder == null) {
+            at(root);
+            return;
+        }
+        for (int c = path.size() - 1; c >= 0; c--) {
+            Container container = path.get(c);
+            TreeBuilder.replayChildren(container.recorded, c == path.size() - 1 ? 0 : 1, listener); // the first child is the stand-in of the next one
+            if (container != root) {
+                listener.endList(container.ordered);
+            }
+        }
+        recorder = null;
+        path.clear();
+        current = root;
+    }
+}
@@ -0,0 +1,147 @@
+package org.toex;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+public class ConvertServer { // converts Markdown over HTTP with one parser that stays warm between requests
+
+    // POST /convert answers with the HTML fragment, POST /document with the whole document,
+    // GET /metrics with the summary of the parser's metrics if it has any
+
+    private final MDParser parser;
+    private final int maxBodyBytes; // larger bodies are answered with 413
+    private final Semaphore slots; // requests converted at the same time, the others are answered with 503
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public ConvertServer(MDParser parser, int maxConcurrent, int maxBodyBytes) {
+        if (maxConcurrent < 1 || maxBodyBytes < 1) {
+            throw new IllegalArgumentException("Mindestens eine Anfrage mit mindestens einem Byte muss erlaubt sein.");
+        }
+        this.parser = parser;
+        this.maxBodyBytes = maxBodyBytes;
+        this.slots = new Semaphore(maxConcurrent);
+    }
+
+    public synchronized int start(InetSocketAddress address) throws IOException { // returns the port, which is chosen freely for port 0
+        if (server != null) {
+            throw new IllegalStateException("Der Server läuft schon.");
+        }
+        server = HttpServer.create(address, 0);
+        executor = Executors.newVirtualThreadPerTaskExecutor(); // a blocked request does not hold a platform thread
+        server.setExecutor(executor);
+        server.createContext("/convert", exchange -> handle(exchange, false));
+        server.createContext("/document", exchange -> handle(exchange, true));
+        server.createContext("/metrics", this::metrics);
+        server.start();
+        return server.getAddress().getPort();
+    }
+
+    public synchronized void stop(int delaySeconds) { // waits up to delaySeconds for running requests
+        if (server != null) {
+            server.stop(delaySeconds);
+            executor.close();
+            server = null;
+        }
+    }
+
+    private void handle(HttpExchange exchange, boolean document) throws IOException {
+        boolean sent = false; // the status of the answer went out already
+        boolean completed = false; // the whole answer was written
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                send(exchange, 405, "Nur POST wird unterstützt.");
+                return;
+            }
+            if (!slots.tryAcquire()) { // reject early instead of queueing without bound
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, 503, "Zu viele Anfragen.");
+                return;
+            }
+            try {
+                String length = exchange.getRequestHeaders().getFirst("Content-Length");
+                if (length != null && Long.parseLong(length) > maxBodyBytes) { // don't read what is too large anyway
+                    send(exchange, 413, "Die Anfrage ist zu groß.");
+                    return;
+                }
+                byte[] body = read(exchange.getRequestBody());
+                if (body == null) {
+                    send(exchange, 413, "Die Anfrage ist zu groß.");
+                    return;
+                }
+                HTMLElement html = parser.compile(new String(body, StandardCharsets.UTF_8)); // parse before the status is sent
+                exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+                exchange.sendResponseHeaders(200, 0); // chunked, the length is known only after writing
+                sent = true;
+                BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8));
+                if (document) {
+                    html.writeDocument(writer, parser.getMetrics()); // stream the HTML into the response
+                } else {
+                    html.writeTo(writer, parser.getMetrics());
+                }
+                writer.flush(); // closing the exchange sends the last chunk
+                completed = true;
+            } catch (RuntimeException | Error e) { // a StackOverflowError of a deep document only ends this request
+                if (sent) { // a second status can't be sent
+                    throw new IOException("Die Antwort wurde abgebrochen.", e); // the server drops the connection, so the client doesn't take the part for the whole answer
+                }
+                if (e instanceof NumberFormatException) {
+                    send(exchange, 400, "Ungültige Content-Length.");
+                } else {
+                    send(exchange, 500, "Die Umwandlung ist fehlgeschlagen.");
+                }
+            } finally {
+                slots.release();
+            }
+        } finally {
+            if (!sent || completed) { // after a failure while streaming the last chunk must not be sent
+                exchange.close();
+            }
+        }
+    }
+
+    private void metrics(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            MDMetrics metrics = parser.getMetrics();
+            if (metrics == null) {
+                send(exchange, 404, "Der Parser sammelt keine Metriken.");
+            } else {
+                send(exchange, 200, metrics.summary());
+            }
+        }
+    }
+
+    private byte[] read(InputStream in) throws IOException { // null if the body is larger than allowed
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int n; (n = in.read(buffer)) >= 0; ) {
+            if (body.size() + n > maxBodyBytes) {
+                return null;
+            }
+            body.write(buffer, 0, n);
+        }
+        return body.toByteArray();
+    }
+
+    private static void send(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.toex;
+
+class FenceScanner { // finds the code blocks of a text one character at a time, without a regex and without backtracking
+
+    // finds what (?m)^ {0,3}`{3} *(.*)\n((?:.*|\n)+)\n {0,3}`{3,} finds: the first closing fence ends the block,
+    // and no block runs over a line terminator other than \n, because neither . nor \n matches it
+
+    private long position; // position of the next character
+    private long segmentStart; // start of the current part between two line terminators
+    private char previous; // terminator before the current part, 0 at the start of the text
+    private int spaces, ticks, phase; // leading spaces and backticks of the current part
+    private boolean looking; // an opening fence was found, looking for its closing fence
+    long openerStart, openerEnd; // the opening line of the last code block, openerEnd is its line break
+    long closerStart, end; // the closing line of the last code block and the end of the block
+
+    boolean accept(char ch) { // true if ch ends the line that closes a code block, the fields describe the block
+        long at = position++;
+        if (!LineMerger.isLineTerminator(ch)) {
+            if (phase == 0 && ch == ' ' && spaces < 3) {
+                spaces++;
+            } else if (phase < 2 && ch == '`') {
+                phase = 1;
+                ticks++;
+            } else {
+                phase = 2;
+            }
+            return false;
+        }
+        boolean found = false;
+        if (!looking) {
+            if (ticks >= 3 && ch == '\n') { // (.*)\n of the opening line can't run over any other terminator
+                looking = true;
+                openerStart = segmentStart;
+                openerEnd = at;
+            }
+        } else if (closes()) {
+            found = true;
+        } else if (ch != '\n') { // the code block can't reach past this terminator
+            looking = false;
+        }
+        previous = ch;
+        segmentStart = at + 1;
+        spaces = ticks = phase = 0;
+        return found;
+    }
+
+    static boolean isFence(CharSequence line) { // up to three spaces and at least three backticks, like the parts accept looks at
+        int i = 0;
+        while (i < line.length() && i < 3 && line.charAt(i) == ' ') i++;
+        return i + 3 <= line.length() && line.charAt(i) == '`' && line.charAt(i + 1) == '`' && line.charAt(i + 2) == '`';
+    }
+
+    boolean finish() { // true if the last line of the text closes a code block
+        return looking && closes();
+    }
+
+    private boolean closes() { // up to three spaces and at least three backticks after a line break, one line after the opener at least
+        if (ticks < 3 || previous != '\n' || segmentStart < openerEnd + 2) {
+            return false;
+        }
+        closerStart = segmentStart;
+        end = segmentStart + spaces + ticks; // `{3,} takes all backticks
+        looking = false;
+        return true;
+    }
+}
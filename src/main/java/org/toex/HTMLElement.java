@@ -1,133 +1,246 @@
 package org.toex;
 
 import javax.swing.text.html.HTML;
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.Iterator;
-import java.util.Map;
-
-public class HTMLElement implements Iterable{
-
-    private static final String SINGLE_TAGS = "(area|base|col|emberd|hr|img|input|keygen|link|meta|param|source|track|wbr)";
-    private static final String INLINE_TAGS = "(p|li|h\\d|strong|span|em|i|title|a|code)" + ("|") +  SINGLE_TAGS;
+import java.util.List;
 
+public class HTMLElement extends HTMLNode implements Iterable{
 
     HTMLElement parent;
-    String tag;
-    String data;
-    ArrayList<HTMLElement> children = new ArrayList<>();
-    Map<String, String> keys = new HashMap<>();
+    HTMLTag tag; // null for text of the old constructor
+    ArrayList<HTMLNode> children; // null until the first child is added
+    String[] keys; // key and value one after another, null until the first key is added
 
-    public HTMLElement(String tag, HTMLElement... elements) {
-        this.tag = tag;
-        for(HTMLElement e: elements) {
+    public HTMLElement(String tag, HTMLNode... elements) {
+        this.tag = HTMLTag.of(tag);
+        for(HTMLNode e: elements) {
             if(e != null) {
-                this.children.add(e);
+                if (children == null) { // filled directly, children() could be overridden
+                    children = new ArrayList<>(2);
+                }
+                children.add(e);
             }
         }
     }
 
     public HTMLElement() {
-        this.tag = "div";
+        this.tag = HTMLTag.of("div");
     }
 
-    public HTMLElement(String data) {
-        this.data = data;
+    HTMLElement(HTMLTag tag) {
+        this.tag = tag;
+    }
+
+    public HTMLElement(String data) { // text without a tag, new code uses HTMLText
+        this.children = new ArrayList<>(1);
+        this.children.add(new HTMLText(data));
     }
 
     public HTMLElement(String tag, String data) {
-        this.tag = tag;
-        this.children.add(new HTMLElement(data));
+        this.tag = HTMLTag.of(tag);
+        this.children = new ArrayList<>(1);
+        this.children.add(new HTMLText(data));
     }
 
-    public HTMLElement add(HTMLElement e) throws Exception {
-        if(data != null) {
+    public HTMLElement add(HTMLNode e) throws Exception {
+        if(tag == null) {
             throw new Exception("Diese HTML-Element enthält schon ein Data.");
         }
-        e.parent = this;
-        children.add(e);
+        adopt(e);
+        children().add(e);
         return this;
     }
 
+    void adopt(HTMLNode node) { // text has no parent to set
+        if (node instanceof HTMLElement element) {
+            element.parent = this;
+        }
+    }
+
     public HTMLElement getParent() {
         return parent;
     }
 
     public String getKey(String key) {
-        return keys.get(key);
+        for (int k = 0; keys != null && k < keys.length; k += 2) {
+            if (keys[k].equals(key)) {
+                return keys[k + 1];
+            }
+        }
+        return null;
     }
 
     public void addKey(String key, String value) {
-        keys.put(key, value);
+        if (keys == null) {
+            keys = new String[]{key, value};
+            return;
+        }
+        for (int k = 0; k < keys.length; k += 2) {
+            if (keys[k].equals(key)) { // like Map.put, the key keeps its place
+                keys[k + 1] = value;
+                return;
+            }
+        }
+        keys = Arrays.copyOf(keys, keys.length + 2);
+        keys[keys.length - 2] = key;
+        keys[keys.length - 1] = value;
+    }
+
+    List<HTMLNode> children() { // the children, the list is created when it is needed
+        if (children == null) {
+            children = new ArrayList<>(2);
+        }
+        return children;
+    }
+
+    int childCount() {
+        return children == null ? 0 : children.size();
+    }
+
+    int keyCount() {
+        return keys == null ? 0 : keys.length / 2;
     }
 
     public String createDocument() {
         StringBuilder document = new StringBuilder();
+        try {
+            writeDocument(document);
+        } catch (IOException e) {
+            throw new RuntimeException(e); // a StringBuilder never throws
+        }
+        return document.toString();
+    }
+
+    public void writeDocument(Appendable out) throws IOException {
         HTMLElement meta = new HTMLElement("meta", (HTMLElement) null);
         meta.addKey("charset", "UTF-8");
         HTMLElement title = new HTMLElement("title", "Title");
         HTMLElement link = new HTMLElement("link", (HTMLElement) null);
-        link.addKey("rel", "stylesheet");
-        link.addKey("type", "text/css");
+        link.addKey("rel", "stylesheet"); // keys are written in the order they are added
         link.addKey("href", "style.css");
+        link.addKey("type", "text/css");
         HTMLElement head = new HTMLElement("head", meta, title, link);
         HTMLElement body = new HTMLElement("body", this);
         HTMLElement html = new HTMLElement("html", head, body);
         html.addKey("lang", "en");
-        document.append("<!DOCTYPE html>\n");
-        return html.build(0);
+        out.append("<!DOCTYPE html>\n");
+        html.write(out, 0);
+    }
+
+    public void writeDocument(Appendable out, MDMetrics metrics) throws IOException { // like writeDocument, timed and counted if metrics is not null
+        if (metrics == null) writeDocument(out); else metrics.render(this, out, true);
+    }
+
+    public void writeTo(Appendable out, MDMetrics metrics) throws IOException {
+        if (metrics == null) writeTo(out); else metrics.render(this, out, false);
+    }
+
+    void writeChildren(Appendable out, int indent) throws IOException { // children like write does, one per line
+        for (int c = 0; c < childCount(); c++) {
+            children.get(c).write(out.append(c == 0 ? "" : "\n"), indent);
+        }
+    }
+
+    private static final class Frame { // an element whose children are written, one entry of the stack in writeContent
+        final HTMLElement element;
+        final int indent; // indentation of the children
+        final boolean inline; // children without line breaks between them
+        final int closeIndent; // indentation of the end tag, -1 if there is none
+        int child; // the next child to write
+
+        Frame(HTMLElement element, int indent, boolean inline, int closeIndent) {
+            this.element = element;
+            this.indent = indent;
+            this.inline = inline;
+            this.closeIndent = closeIndent;
+        }
+    }
+
+    @Override
+    void write(Appendable out, int indent) throws IOException {
+        Frame frame = start(out, indent);
+        if (frame != null) {
+            writeContent(out, frame.indent, frame.inline);
+            end(out, frame);
+        }
     }
 
-    private String build(int indent) {
-        StringBuilder sb = new StringBuilder();
-        boolean isInlineTag = tag == null || tag.matches(INLINE_TAGS);
-        boolean isSingleTag = children.isEmpty() && (tag == null || tag.matches(SINGLE_TAGS));
+    private Frame start(Appendable out, int indent) throws IOException { // writes the start tag, null if the element has no content
+        if(tag == null) { // text of the old constructor
+            indent(out, indent);
+            return new Frame(this, 0, true, -1);
+        }
+        boolean isInlineTag = tag.isInline();
+        boolean isSingleTag = childCount() == 0 && tag.isSingle();
         int currentIndent = isInlineTag ? 0 : indent;
         int nextIndent = currentIndent + (isInlineTag ? 0 : 4);
-        if(tag == null) {
-            return " ".repeat(indent) + data;
-        }
-        if (tag.matches("pre")) {
+        if (tag.isPreformatted()) {
             nextIndent = 0;
         }
-        sb.append(" ".repeat(indent)).append("<").append(tag);
+        indent(out, indent).append("<").append(tag.getName());
 
         // add keys and values
-        for (Map.Entry<String, String> entry : keys.entrySet()) { // for all keys in key and value map
-            sb.append(" ")
-                    .append(entry.getKey()) // add key
-                    .append(" =\"").append(entry.getValue()).append("\"");  // add key value
+        for (int k = 0; keys != null && k < keys.length; k += 2) { // for all keys in the order they were added
+            out.append(" ")
+                    .append(keys[k]) // add key
+                    .append(" =\"").append(keys[k + 1]).append("\"");  // add key value
         }
-        sb.append(">").append(isInlineTag
+        out.append(">").append(isInlineTag
                 ? "" : "\n"); // close tag, if it is a inline tag don't start with a new line
 
         if (isSingleTag) { // if the given tag is single, don't proceed further
-            return sb.toString();
+            return null;
         }
+        return new Frame(this, nextIndent, isInlineTag, currentIndent);
+    }
 
-        Iterator<HTMLElement> i = children.iterator(); // iterate child elements
-        while(i.hasNext()) { // if list is not finished
-            sb.append(i.next().build(nextIndent)) // add child element into current element code
-                    .append(isInlineTag ? "" : "\n"); // append child html code
+    private static void end(Appendable out, Frame frame) throws IOException {
+        if (frame.closeIndent >= 0) {
+            indent(out, frame.closeIndent).append("</").append(frame.element.tag.getName()).append(">"); // close tag
         }
-        sb.append(" ".repeat(currentIndent)).append("</").append(tag).append(">"); // close tag
-        return sb.toString();
     }
 
-    @Override
-    public String toString() {
-        return build(0);
+    void writeContent(Appendable out, int indent, boolean inline) throws IOException { // everything between the tags
+        Deque<Frame> stack = new ArrayDeque<>(); // open elements instead of one recursive call per level, quotes nest without limit
+        stack.push(new Frame(this, indent, inline, -1));
+        while (!stack.isEmpty()) {
+            Frame frame = stack.peek();
+            if (frame.child == frame.element.childCount()) { // all children written
+                stack.pop();
+                end(out, frame);
+                if (!stack.isEmpty()) {
+                    out.append(stack.peek().inline ? "" : "\n");
+                }
+                continue;
+            }
+            HTMLNode node = frame.element.children.get(frame.child++);
+            if (node.getClass() == HTMLElement.class) { // subclasses may write themselves differently
+                Frame child = ((HTMLElement) node).start(out, frame.indent);
+                if (child != null) {
+                    stack.push(child);
+                    continue;
+                }
+            } else {
+                node.write(out, frame.indent); // write child element straight into the output
+            }
+            out.append(frame.inline ? "" : "\n");
+        }
     }
 
     @Override
-    public Iterator<HTMLElement> iterator() {
-        if(children.isEmpty()) {
+    public Iterator<HTMLNode> iterator() {
+        if(childCount() == 0) {
             return null;
         }
         return children.iterator();
     }
 
     public void setTag(String tag) {
-        this.tag = tag;
+        this.tag = HTMLTag.of(tag);
     }
 }
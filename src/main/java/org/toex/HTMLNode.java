@@ -0,0 +1,37 @@
+package org.toex;
+
+import java.io.IOException;
+
+public abstract class HTMLNode { // a node of the tree, an element with its tag, children and keys or just text
+
+    private static final String SPACES = " ".repeat(64); // indentation is written from this string
+
+    HTMLNode() {
+    }
+
+    abstract void write(Appendable out, int indent) throws IOException;
+
+    public void writeTo(Appendable out) throws IOException {
+        write(out, 0);
+    }
+
+    static Appendable indent(Appendable out, int indent) throws IOException {
+        while(indent > 0) { // write the indentation in chunks instead of repeating a new string
+            int n = Math.min(indent, SPACES.length());
+            out.append(SPACES, 0, n);
+            indent -= n;
+        }
+        return out;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        try {
+            writeTo(sb);
+        } catch (IOException e) {
+            throw new RuntimeException(e); // a StringBuilder never throws
+        }
+        return sb.toString();
+    }
+}
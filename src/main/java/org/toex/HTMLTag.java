@@ -0,0 +1,59 @@
+package org.toex;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+public final class HTMLTag {
+
+    private static final Pattern SINGLE_TAGS = Pattern.compile("(area|base|col|emberd|hr|img|input|keygen|link|meta|param|source|track|wbr)");
+    private static final Pattern INLINE_TAGS = Pattern.compile("(p|li|h\\d|strong|span|em|i|title|a|code)" + ("|") + SINGLE_TAGS.pattern());
+
+    private static final Map<String, HTMLTag> TAGS = new ConcurrentHashMap<>(); // every tag name is classified only once
+
+    static { // register the tags the parser and the document template use
+        for (String name : new String[]{"html", "head", "body", "meta", "title", "link", "div", "p", "h1", "h2", "h3",
+                "h4", "h5", "h6", "h7", "h8", "h9", "blockquote", "pre", "code", "ol", "ul", "li", "strong", "em", "s",
+                "a", "img"}) {
+            of(name);
+        }
+    }
+
+    private final String name;
+    private final boolean inline; // inline tags are written on one line
+    private final boolean single; // single (void) tags have no closing tag
+    private final boolean preformatted; // children of preformatted tags are not indented
+
+    private HTMLTag(String name) {
+        this.name = name;
+        this.inline = INLINE_TAGS.matcher(name).matches();
+        this.single = SINGLE_TAGS.matcher(name).matches();
+        this.preformatted = name.equals("pre");
+    }
+
+    public static HTMLTag of(String name) {
+        HTMLTag tag = TAGS.get(name); // known tags are found without allocating
+        return tag != null ? tag : TAGS.computeIfAbsent(name, HTMLTag::new); // unknown tags fall back to a new entry
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isInline() {
+        return inline;
+    }
+
+    public boolean isSingle() {
+        return single;
+    }
+
+    public boolean isPreformatted() {
+        return preformatted;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
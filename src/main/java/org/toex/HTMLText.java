@@ -0,0 +1,21 @@
+package org.toex;
+
+import java.io.IOException;
+
+public class HTMLText extends HTMLNode { // text between the tags, only the data without a parent, tag, children or keys
+
+    final String data;
+
+    public HTMLText(String data) {
+        this.data = data;
+    }
+
+    public String getData() {
+        return data;
+    }
+
+    @Override
+    void write(Appendable out, int indent) throws IOException {
+        indent(out, indent).append(data);
+    }
+}
@@ -0,0 +1,92 @@
+package org.toex;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.regex.Pattern;
+
+public class InlineRules {
+
+    private record Rule(InlineScanner.Kind kind, Pattern pattern, BiFunction<HTMLElement, String, Boolean> parser) {}
+
+    record Compiled(Pattern pattern, List<BiFunction<HTMLElement, String, Boolean>> parsers,
+                    List<InlineScanner.Kind> kinds, String signature) {} // everything a paragraph needs, shared by all parsing threads
+
+    private static final Pattern NOTHING = Pattern.compile("(?!)"); // never matches, used when no rule is registered
+
+    private final Map<String, Rule> rules = new LinkedHashMap<>(); // rules in the order their parsers are tried, guarded by this
+    private volatile Compiled compiled; // built again only on first use after the rules changed
+
+    public InlineRules add(String name, Pattern pattern, BiFunction<HTMLElement, String, Boolean> parser) {
+        return add(name, null, pattern, parser);
+    }
+
+    synchronized InlineRules add(String name, InlineScanner.Kind kind, Pattern pattern, BiFunction<HTMLElement, String, Boolean> parser) {
+        rules.put(name, new Rule(kind, pattern, parser)); // replaces a rule with the same name
+        compiled = null;
+        return this;
+    }
+
+    public synchronized InlineRules remove(String name) {
+        if (rules.remove(name) != null) {
+            compiled = null;
+        }
+        return this;
+    }
+
+    public synchronized boolean contains(String name) {
+        return rules.containsKey(name);
+    }
+
+    public Pattern pattern() {
+        return compiled().pattern();
+    }
+
+    public List<BiFunction<HTMLElement, String, Boolean>> parsers() {
+        return compiled().parsers();
+    }
+
+    String signature() { // names and patterns of the rules, changes whenever the rules do
+        return compiled().signature();
+    }
+
+    Compiled compiled() {
+        Compiled current = compiled;
+        if (current == null) {
+            synchronized (this) {
+                current = compiled;
+                if (current == null) {
+                    current = compile();
+                    compiled = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private Compiled compile() {
+        StringBuilder inlineRegex = new StringBuilder(); // initialize a StringBuilder for inline patterns
+        Iterator<Rule> i = rules.values().stream().filter(r -> !r.pattern().pattern().isEmpty()).iterator(); // filter non-empty patterns
+        while (i.hasNext()) { // iterate through the filtered patterns
+            inlineRegex.append(i.next().pattern().pattern()).append(i.hasNext() ? "|" : ""); // append the pattern with a separator if more patterns exist
+        }
+        List<BiFunction<HTMLElement, String, Boolean>> parsers = new ArrayList<>();
+        List<InlineScanner.Kind> kinds = new ArrayList<>();
+        StringBuilder signature = new StringBuilder();
+        for (Map.Entry<String, Rule> entry : rules.entrySet()) {
+            Rule rule = entry.getValue();
+            signature.append(entry.getKey()).append('=').append(rule.pattern().pattern()).append('\n');
+            parsers.add(rule.parser());
+            if (kinds != null && rule.kind() != null) {
+                kinds.add(rule.kind());
+            } else {
+                kinds = null; // a rule the scanner does not know, use the patterns
+            }
+        }
+        return new Compiled(inlineRegex.isEmpty() ? NOTHING : Pattern.compile(inlineRegex.toString()),
+                List.copyOf(parsers), kinds != null ? List.copyOf(kinds) : null, signature.toString());
+    }
+}
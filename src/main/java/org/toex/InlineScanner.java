@@ -0,0 +1,237 @@
+package org.toex;
+
+import java.nio.CharBuffer;
+import java.util.List;
+
+class InlineScanner {
+
+    enum Kind { CODE, BOLD_ITALIC, STRIKETHROUGH, IMAGE, LINK } // built-in inline rules the scanner knows
+
+    private final List<Kind> kinds; // enabled rules, in the order they are tried on a match
+    private final String line;
+    private final int[] cache = new int[10]; // from/result pairs for the last search of each closing delimiter
+
+    private int groupStart, groupEnd; // content of the last match
+    private int hrefStart, hrefEnd; // target of the last link or image match
+    private int stars; // number of stars of the last bold or italic match
+
+    InlineScanner(List<Kind> kinds, String line) {
+        this.kinds = kinds;
+        this.line = line;
+        for (int c = 0; c < cache.length; c += 2) {
+            cache[c] = Integer.MAX_VALUE; // nothing searched yet
+        }
+    }
+
+    void scan(MDListener listener) {
+        int lastEnd = 0; // track the last match's end position
+        int i = 0;
+        while (i < line.length()) {
+            Kind kind = opener(line.charAt(i)); // every rule starts with its own character
+            int end = kind != null && kinds.contains(kind) ? match(kind, i, 0, line.length()) : -1;
+            if (end < 0) {
+                i++;
+                continue;
+            }
+            if (i > lastEnd) {
+                text(listener, lastEnd, i); // the text before the match, empty text changes nothing in a paragraph
+            }
+            dispatch(kind, i, end, listener); // the element for the match
+            lastEnd = end;
+            i = end;
+        }
+        if (line.length() > lastEnd) {
+            text(listener, lastEnd, line.length()); // any remaining text after the last match
+        }
+    }
+
+    private void dispatch(Kind matched, int from, int to, MDListener listener) {
+        for (Kind kind : kinds) { // a rule tried earlier wins if it finds anything inside the matched text
+            if (kind == matched) {
+                match(kind, from, from, to);
+                emit(kind, listener);
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                if (opener(line.charAt(i)) == kind && match(kind, i, from, to) >= 0) {
+                    emit(kind, listener);
+                    return;
+                }
+            }
+        }
+        throw new IllegalStateException("Kein Inline-Element gefunden.");
+    }
+
+    private void emit(Kind kind, MDListener listener) { // the same elements the static methods below build
+        switch (kind) {
+            case CODE -> listener.code(CharBuffer.wrap(line, groupStart, groupEnd));
+            case BOLD_ITALIC -> {
+                if (stars % 2 == 1) listener.startEmphasis();
+                if (stars % 2 == 0 || stars > 1) listener.startStrong();
+                trimmed(listener);
+                if (stars % 2 == 0 || stars > 1) listener.endStrong();
+                if (stars % 2 == 1) listener.endEmphasis();
+            }
+            case STRIKETHROUGH -> {
+                listener.startStrikethrough();
+                trimmed(listener);
+                listener.endStrikethrough();
+            }
+            case IMAGE -> listener.image(line.substring(hrefStart, hrefEnd), line.substring(groupStart, groupEnd));
+            case LINK -> {
+                listener.startLink(line.substring(hrefStart, hrefEnd));
+                text(listener, groupStart, groupEnd);
+                listener.endLink();
+            }
+        }
+    }
+
+    private void trimmed(MDListener listener) { // the content of the last match like String.trim
+        int start = groupStart, end = groupEnd;
+        while (start < end && line.charAt(start) <= ' ') start++;
+        while (end > start && line.charAt(end - 1) <= ' ') end--;
+        text(listener, start, end);
+    }
+
+    private void text(MDListener listener, int start, int end) {
+        listener.text(CharBuffer.wrap(line, start, end));
+    }
+
+    private static Kind opener(char c) {
+        return switch (c) {
+            case '`' -> Kind.CODE;
+            case '*' -> Kind.BOLD_ITALIC;
+            case '~' -> Kind.STRIKETHROUGH;
+            case '!' -> Kind.IMAGE;
+            case '[' -> Kind.LINK;
+            default -> null;
+        };
+    }
+
+    private int match(Kind kind, int i, int from, int to) { // returns the end of the match starting at i, or -1
+        switch (kind) {
+            case CODE: {
+                int close = close("`", 0, i + 1, to);
+                if (close < 0) return -1;
+                groupStart = i + 1;
+                groupEnd = close;
+                return close + 1;
+            }
+            case BOLD_ITALIC: {
+                int run = i;
+                while (run < to && line.charAt(run) == '*') run++;
+                for (int count = run - i; count > 0; count--) { // the most stars that have a closing run win
+                    int close = closeStars(i + count, count, to);
+                    if (close >= 0) {
+                        stars = count;
+                        groupStart = i + count;
+                        groupEnd = close;
+                        return close + count;
+                    }
+                }
+                return -1;
+            }
+            case STRIKETHROUGH: {
+                if (i + 1 >= to || line.charAt(i + 1) != '~') return -1;
+                int close = close("~~", 2, i + 2, to);
+                if (close < 0) return -1;
+                groupStart = i + 2;
+                groupEnd = close;
+                return close + 2;
+            }
+            case IMAGE: {
+                if (i + 1 >= to || line.charAt(i + 1) != '[') return -1;
+                return target(i + 2, to);
+            }
+            case LINK: {
+                if (i > from && line.charAt(i - 1) == '!') return -1; // that is an image
+                return target(i + 1, to);
+            }
+        }
+        return -1;
+    }
+
+    private int target(int textStart, int to) { // the "](href)" part of links and images
+        int middle = close("](", 4, textStart, to);
+        if (middle < 0) return -1;
+        int close = close(")", 6, middle + 2, to);
+        if (close < 0) return -1;
+        groupStart = textStart;
+        groupEnd = middle;
+        hrefStart = middle + 2;
+        hrefEnd = close;
+        return close + 1;
+    }
+
+    private int close(String delimiter, int slot, int from, int to) { // next delimiter on the same line before to
+        int found = find(delimiter, slot, from);
+        if (found < 0 || found + delimiter.length() > to) return -1;
+        int terminator = find(null, 8, from);
+        return terminator < 0 || terminator >= found ? found : -1;
+    }
+
+    private int find(String delimiter, int slot, int from) { // indexOf with a one entry cache per delimiter
+        int cachedFrom = cache[slot], cachedResult = cache[slot + 1];
+        if (from >= cachedFrom && (cachedResult < 0 || from <= cachedResult)) {
+            return cachedResult; // nothing between the last search start and its result
+        }
+        int result = delimiter != null ? line.indexOf(delimiter, from) : terminator(from);
+        cache[slot] = from;
+        cache[slot + 1] = result;
+        return result;
+    }
+
+    private int terminator(int from) {
+        for (int c = from; c < line.length(); c++) {
+            if (LineMerger.isLineTerminator(line.charAt(c))) return c;
+        }
+        return -1;
+    }
+
+    private int closeStars(int from, int count, int to) { // next run of count stars on the same line before to
+        for (int c = from; c + count <= to; c++) {
+            char ch = line.charAt(c);
+            if (LineMerger.isLineTerminator(ch)) return -1;
+            if (ch == '*' && starsAt(c, count)) return c;
+        }
+        return -1;
+    }
+
+    private boolean starsAt(int from, int count) {
+        for (int c = from; c < from + count; c++) {
+            if (line.charAt(c) != '*') return false;
+        }
+        return true;
+    }
+
+    static HTMLElement code(String content) {
+        return new HTMLElement("code", content);
+    }
+
+    static HTMLElement boldItalic(int stars, String content) {
+        if (stars % 2 == 1) {
+            if (stars > 1) {
+                return new HTMLElement("em", new HTMLElement("strong", content.trim()));
+            }
+            return new HTMLElement("em", content.trim());
+        }
+        return new HTMLElement("strong", content.trim());
+    }
+
+    static HTMLElement strikethrough(String content) {
+        return new HTMLElement("s", content.trim());
+    }
+
+    static HTMLElement image(String alt, String src) {
+        HTMLElement img = new HTMLElement("img", (HTMLElement) null); // create an image element
+        img.addKey("src", src); // add the src attribute with the image URL
+        img.addKey("alt", alt); // add the alt attribute with the image description
+        return img;
+    }
+
+    static HTMLElement link(String text, String href) {
+        HTMLElement a = new HTMLElement("a", text); // create an anchor element with link text
+        a.addKey("href", href); // add the href attribute with the link URL
+        return a;
+    }
+}
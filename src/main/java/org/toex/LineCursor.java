@@ -0,0 +1,140 @@
+package org.toex;
+
+import java.util.Arrays;
+
+class LineCursor implements CharSequence { // the cursor itself is the current line, so matchers run on it directly
+
+    private final String text;
+    private int[] starts = new int[16]; // start offset of every line in text
+    private int[] ends = new int[16]; // end offset of every line in text
+    private int count; // number of lines
+    private int index; // current line
+    private int viewStart, viewEnd; // part of the current line that is visible, a list item hides its marker
+    private final boolean contiguous; // one line break between two lines, false for the lines of a quote
+
+    LineCursor(String text) {
+        this.text = text;
+        this.contiguous = true;
+        int start = 0;
+        for (int end = text.indexOf('\n'); end >= 0; end = text.indexOf('\n', start)) { // offsets instead of substrings
+            addLine(start, end);
+            start = end + 1;
+        }
+        addLine(start, text.length());
+        if (start > 0) { // like String.split, drop trailing empty lines
+            while (count > 0 && starts[count - 1] == ends[count - 1]) count--;
+        }
+        setView();
+    }
+
+    LineCursor(String text, int[] starts, int[] ends, int count) { // lines that are parts of the lines of text, e.g. without their quote marker
+        this.text = text;
+        this.starts = starts;
+        this.ends = ends;
+        this.count = count;
+        this.contiguous = false;
+        setView();
+    }
+
+    private void addLine(int start, int end) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+        }
+        starts[count] = start;
+        ends[count] = end;
+        count++;
+    }
+
+    private void setView() {
+        viewStart = index < count ? starts[index] : text.length();
+        viewEnd = index < count ? ends[index] : text.length();
+    }
+
+    String text() {
+        return text;
+    }
+
+    boolean contiguous() { // the text from the start of one line to the end of another holds just these lines
+        return contiguous;
+    }
+
+    int offset() { // offset of the visible part of the current line in the text
+        return viewStart;
+    }
+
+    int index() {
+        return index;
+    }
+
+    int count() {
+        return count;
+    }
+
+    int start(int line) { // offset of a line in the text
+        return starts[line];
+    }
+
+    int end(int line) { // offset of the line break after a line
+        return ends[line];
+    }
+
+    void seek(int line) { // make a line the current one
+        index = line;
+        setView();
+    }
+
+    int lineAt(int offset) { // index of the last line that starts at or before offset
+        int low = 0, high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (starts[middle] <= offset) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return Math.max(high, 0);
+    }
+
+    boolean hasNext() {
+        return index < count;
+    }
+
+    void advance() { // move to the next line
+        index++;
+        setView();
+    }
+
+    void narrow(int from, int to) { // hide everything of the current line outside from and to
+        viewEnd = viewStart + to;
+        viewStart += from;
+    }
+
+    String trimmed() { // the current line without surrounding whitespace, like String.trim()
+        int start = viewStart, end = viewEnd;
+        while (start < end && text.charAt(start) <= ' ') start++;
+        while (end > start && text.charAt(end - 1) <= ' ') end--;
+        return text.substring(start, end);
+    }
+
+    @Override
+    public int length() {
+        return viewEnd - viewStart;
+    }
+
+    @Override
+    public char charAt(int i) {
+        return text.charAt(viewStart + i);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return text.substring(viewStart + start, viewStart + end);
+    }
+
+    @Override
+    public String toString() {
+        return text.substring(viewStart, viewEnd);
+    }
+}
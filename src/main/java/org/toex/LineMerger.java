@@ -0,0 +1,106 @@
+package org.toex;
+
+class LineMerger {
+
+    enum LineKind { BLANK, HEADER, LIST_ITEM, QUOTE, FENCE, TEXT } // what a line looks like to the merger
+
+    public StringBuilder merge(CharSequence md, int from, int to, StringBuilder out) { // merges the lines of md between from and to into out
+        int runStart = -1; // output position where the current whitespace run starts
+        int runNewlines = 0; // newlines inside the current whitespace run
+        int runLastNewline = -1; // output position of the last newline inside the current whitespace run
+        int[] wsCache = {-1, -1}; // last whitespace run seen by skipWhitespace(), so blank line runs are scanned once
+        int chainStart = -1; // start of the logical line the previous line was merged into
+        int lineStart = from;
+        while(lineStart <= to) {
+            int lineEnd = lineStart;
+            while(lineEnd < to && md.charAt(lineEnd) != '\n') lineEnd++; // find the end of the current line
+            boolean merged = false;
+            if(lineEnd < to) { // there is a next line, so decide whether it continues this one
+                int start = lastTerminator(md, lineStart, lineEnd); // text after \r and friends starts a line of its own
+                if(start < 0) {
+                    start = chainStart >= 0 ? chainStart : lineStart;
+                }
+                if(start < lineEnd && (start == chainStart || canStart(classify(md, start, to, wsCache)))) {
+                    merged = classify(md, lineEnd + 1, to, wsCache) == LineKind.TEXT; // only plain text continues a paragraph
+                }
+                chainStart = merged ? start : -1;
+            }
+            for(int c = lineStart; c <= lineEnd && c < to; c++) { // copy the line and collapse empty lines on the way
+                char ch = c == lineEnd && merged ? ' ' : md.charAt(c);
+                if(isWhitespace(ch)) {
+                    if(runStart < 0) runStart = out.length();
+                    if(ch == '\n') {
+                        runNewlines++;
+                        runLastNewline = out.length();
+                    }
+                } else if(runStart >= 0) {
+                    if(runNewlines >= 2) out.replace(runStart, runLastNewline + 1, "\n"); // two or more line breaks become one
+                    runStart = -1;
+                    runNewlines = 0;
+                }
+                out.append(ch);
+            }
+            lineStart = lineEnd + 1;
+        }
+        if(runStart >= 0 && runNewlines >= 2) out.replace(runStart, runLastNewline + 1, "\n"); // trailing empty lines
+        return out;
+    }
+
+    LineKind classify(CharSequence md, int i, int to, int[] wsCache) {
+        if(i >= to || isLineTerminator(md.charAt(i))) return LineKind.BLANK;
+        if(startsWith(md, i, to, "```")) return LineKind.FENCE;
+        int first = skipWhitespace(md, i, to, wsCache); // leading whitespace may run over blank lines
+        if(first >= to) return LineKind.TEXT;
+        char c = md.charAt(first);
+        if(c == '#') {
+            int hashes = first;
+            while(hashes < to && md.charAt(hashes) == '#') hashes++;
+            if(hashes - first <= 6 && hashes < to && isWhitespace(md.charAt(hashes))) return LineKind.HEADER;
+        } else if(c == '-' || c == '*' || c == '+') {
+            if(first + 1 < to && isWhitespace(md.charAt(first + 1))) return LineKind.LIST_ITEM;
+        } else if(c >= '0' && c <= '9') {
+            if(first + 2 < to && (md.charAt(first + 1) == '.' || md.charAt(first + 1) == ')')
+                    && isWhitespace(md.charAt(first + 2))) return LineKind.LIST_ITEM;
+        } else if(c == '>') {
+            return LineKind.QUOTE;
+        }
+        return LineKind.TEXT;
+    }
+
+    private boolean canStart(LineKind kind) {
+        return kind != LineKind.FENCE && kind != LineKind.HEADER; // headers and fences never take continuation lines
+    }
+
+    private int skipWhitespace(CharSequence md, int i, int to, int[] wsCache) {
+        if(i >= wsCache[0] && i < wsCache[1]) return wsCache[1]; // already inside a known whitespace run
+        int end = i;
+        while(end < to && isWhitespace(md.charAt(end))) end++;
+        wsCache[0] = i;
+        wsCache[1] = end;
+        return end;
+    }
+
+    private int lastTerminator(CharSequence md, int from, int to) {
+        int start = -1;
+        for(int c = from; c < to; c++) {
+            if(isLineTerminator(md.charAt(c))) start = c + 1;
+        }
+        return start;
+    }
+
+    static boolean startsWith(CharSequence md, int i, int to, String prefix) {
+        if(i + prefix.length() > to) return false;
+        for(int c = 0; c < prefix.length(); c++) {
+            if(md.charAt(i + c) != prefix.charAt(c)) return false;
+        }
+        return true;
+    }
+
+    static boolean isWhitespace(char c) { // same characters as \s in java.util.regex
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    static boolean isLineTerminator(char c) { // characters that . does not match in java.util.regex
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+}
@@ -0,0 +1,147 @@
+package org.toex;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+public class MDDocument { // a parsed document that is updated block by block when its text is edited
+
+    private final MDParser parser;
+    private final HTMLElement html = new HTMLElement(); // the same tree before and after every edit
+    private String text;
+    private LineCursor lines; // lines of the precompiled text
+    private int blocks; // number of top level blocks
+    private int[] blockLines = new int[16]; // first line of every top level block
+    private int[] blockChildren = new int[16]; // index of the first element of every top level block in html
+
+    public MDDocument(MDParser parser, String markdown) {
+        this.parser = parser;
+        this.text = markdown;
+        MDMetrics metrics = parser.getMetrics();
+        MDMetrics.Document document = metrics != null ? metrics.start(markdown.length()) : null;
+        this.lines = new LineCursor(parser.precompile(markdown, document));
+        int previous = document != null ? document.enter(MDMetrics.Document.BLOCKS) : 0;
+        parseBlocks(new ParseContext(lines, new BlockEmitter(counted(new TreeBuilder(html), document)), document, null));
+        if (document != null) {
+            document.enter(previous);
+            document.lines += lines.count();
+            metrics.record(document);
+        }
+    }
+
+    public HTMLElement getHtml() {
+        return html;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public HTMLElement edit(int offset, int removed, String inserted) { // replaces removed characters at offset with inserted
+        Objects.checkFromIndexSize(offset, removed, text.length());
+        String newText = text.substring(0, offset) + inserted + text.substring(offset + removed);
+        MDMetrics metrics = parser.getMetrics();
+        MDMetrics.Document document = metrics != null ? metrics.start(newText.length()) : null; // an edit counts as a document of its own
+        LineCursor newLines = new LineCursor(parser.precompile(newText, document)); // code blocks can pair up differently, so precompile all of it
+        String before = lines.text(), after = newLines.text();
+        int prefix = 0, limit = Math.min(before.length(), after.length());
+        while (prefix < limit && before.charAt(prefix) == after.charAt(prefix)) prefix++;
+        int suffix = 0;
+        while (suffix < limit - prefix
+                && before.charAt(before.length() - 1 - suffix) == after.charAt(after.length() - 1 - suffix)) suffix++;
+        text = newText;
+        if (prefix == before.length() && prefix == after.length()) {
+            if (metrics != null) metrics.record(document);
+            return html; // the edit did not change what is parsed
+        }
+
+        int firstChanged = lines.lineAt(prefix);
+        int dirty = firstChanged == 0 ? 0 : blockOf(firstChanged - 1); // a block also looks at the line after it
+        int delta = after.length() - before.length();
+        int resyncFrom = after.length() - suffix; // lines starting after this are the same as before
+
+        HTMLElement parsed = new HTMLElement(); // collects the elements of the parsed blocks
+        ParseContext context = new ParseContext(newLines, new BlockEmitter(counted(new TreeBuilder(parsed), document)), document, null);
+        newLines.seek(blockLines[dirty]);
+        int previous = document != null ? document.enter(MDMetrics.Document.BLOCKS) : 0;
+        int[] newBlockLines = new int[16], newBlockChildren = new int[16];
+        int newBlocks = 0, reused = blocks; // first old block that is kept
+        while (newLines.hasNext()) {
+            if (newBlocks == newBlockLines.length) {
+                newBlockLines = Arrays.copyOf(newBlockLines, newBlocks * 2);
+                newBlockChildren = Arrays.copyOf(newBlockChildren, newBlocks * 2);
+            }
+            newBlockLines[newBlocks] = newLines.index();
+            newBlockChildren[newBlocks] = parsed.childCount();
+            newBlocks++;
+            parser.parseTopLevelBlock(context);
+            if (!newLines.hasNext()) {
+                break;
+            }
+            int start = newLines.start(newLines.index());
+            if (start - 1 >= resyncFrom) { // the line and its line break are unchanged
+                int oldLine = lines.lineAt(start - delta);
+                int oldBlock = Arrays.binarySearch(blockLines, dirty, blocks, oldLine);
+                if (lines.start(oldLine) == start - delta && oldBlock >= 0) { // an old block starts here, keep it and all after it
+                    reused = oldBlock;
+                    break;
+                }
+            }
+        }
+        if (document != null) {
+            document.enter(previous);
+            document.lines += newLines.index() - blockLines[dirty]; // only the lines parsed again
+            metrics.record(document);
+        }
+
+        int from = blockChildren[dirty];
+        int to = reused < blocks ? blockChildren[reused] : html.childCount();
+        List<HTMLNode> replaced = html.children().subList(from, to);
+        replaced.clear();
+        replaced.addAll(parsed.children());
+        for (HTMLNode child : parsed.children()) {
+            html.adopt(child);
+        }
+
+        int lineShift = reused < blocks ? newLines.index() - blockLines[reused] : 0;
+        int childShift = parsed.childCount() - (to - from);
+        int total = dirty + newBlocks + (blocks - reused);
+        int[] lineTable = Arrays.copyOf(blockLines, Math.max(total, 16));
+        int[] childTable = Arrays.copyOf(blockChildren, Math.max(total, 16));
+        for (int b = reused; b < blocks; b++) { // blocks after the edit only move
+            lineTable[dirty + newBlocks + b - reused] = blockLines[b] + lineShift;
+            childTable[dirty + newBlocks + b - reused] = blockChildren[b] + childShift;
+        }
+        for (int b = 0; b < newBlocks; b++) {
+            lineTable[dirty + b] = newBlockLines[b];
+            childTable[dirty + b] = newBlockChildren[b] + from;
+        }
+        blockLines = lineTable;
+        blockChildren = childTable;
+        blocks = total;
+        lines = newLines;
+        return html;
+    }
+
+    private void parseBlocks(ParseContext context) {
+        while (context.lines.hasNext()) {
+            if (blocks == blockLines.length) {
+                blockLines = Arrays.copyOf(blockLines, blocks * 2);
+                blockChildren = Arrays.copyOf(blockChildren, blocks * 2);
+            }
+            blockLines[blocks] = context.lines.index();
+            blockChildren[blocks] = html.childCount();
+            blocks++;
+            parser.parseTopLevelBlock(context);
+        }
+    }
+
+    private static MDListener counted(MDListener listener, MDMetrics.Document document) { // the nodes go to the document unless it is null
+        return document != null ? new MDMetrics.NodeCounter(listener, document) : listener;
+    }
+
+    private int blockOf(int line) { // the top level block the line belongs to
+        int found = Arrays.binarySearch(blockLines, 0, blocks, line);
+        return found >= 0 ? found : Math.max(-found - 2, 0);
+    }
+}
@@ -0,0 +1,50 @@
+package org.toex;
+
+public interface MDListener { // receives the parsed document as events in document order, without building a tree
+
+    default void startHeading(int level) {}
+
+    default void endHeading(int level) {}
+
+    default void startParagraph() {}
+
+    default void endParagraph() {}
+
+    default void startListItem() {} // a paragraph inside a list, written as li
+
+    default void endListItem() {}
+
+    default void startList(boolean ordered) {}
+
+    default void endList(boolean ordered) {}
+
+    default void startQuote() {}
+
+    default void endQuote() {}
+
+    default void codeBlock(String info, String code) {}
+
+    default void text(CharSequence text) {} // a view of the parsed line, not a copy
+
+    default void code(CharSequence code) {} // inline code, a view like text
+
+    default void startEmphasis() {}
+
+    default void endEmphasis() {}
+
+    default void startStrong() {}
+
+    default void endStrong() {}
+
+    default void startStrikethrough() {}
+
+    default void endStrikethrough() {}
+
+    default void startLink(String href) {}
+
+    default void endLink() {}
+
+    default void image(String src, String alt) {}
+
+    default void element(HTMLElement element) {} // an element of a rule added with MDParser.addInlineRule
+}
@@ -0,0 +1,250 @@
+package org.toex;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class MDMetrics { // timings and counters of every parsed and rendered document, only collected if a parser is given one
+
+    public enum Metric { PRECOMPILE_NANOS, BLOCK_NANOS, INLINE_NANOS, RENDER_NANOS, LINES, NODES, MATCHERS, OUTPUT_BYTES }
+
+    static final int WINDOW = 4096; // percentiles are taken over the last documents, counts and totals over all of them
+
+    private final long[][] samples = new long[Metric.values().length][]; // ring of the last values per metric, null until the first one
+    private final long[] counts = new long[Metric.values().length];
+    private final long[] totals = new long[Metric.values().length];
+
+    public synchronized long count(Metric metric) {
+        return counts[metric.ordinal()];
+    }
+
+    public synchronized long total(Metric metric) {
+        return totals[metric.ordinal()];
+    }
+
+    public long percentile(Metric metric, double percentile) { // nearest rank over the last WINDOW documents, 0 without any document
+        long[] sorted = window(metric);
+        Arrays.sort(sorted); // sorted outside the monitor, the parsing threads only wait for the copy
+        return rank(sorted, percentile);
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(samples, null); // the rings are allocated again when they are needed
+        Arrays.fill(counts, 0);
+        Arrays.fill(totals, 0);
+    }
+
+    public String summary() { // one line per metric with the percentiles over the last documents
+        StringBuilder sb = new StringBuilder(String.format("%-16s %8s %12s %12s %12s %12s%n", "metric", "count", "p50", "p90", "p99", "max"));
+        for (Metric metric : Metric.values()) {
+            long count = count(metric);
+            long[] sorted = window(metric);
+            Arrays.sort(sorted);
+            sb.append(String.format("%-16s %8d %12d %12d %12d %12d%n", metric.name().toLowerCase(), count,
+                    rank(sorted, 50), rank(sorted, 90), rank(sorted, 99), rank(sorted, 100)));
+        }
+        return sb.toString();
+    }
+
+    private synchronized long[] window(Metric metric) { // copy of the values in the ring, in no particular order
+        int m = metric.ordinal();
+        return samples[m] == null ? new long[0] : Arrays.copyOf(samples[m], (int) Math.min(counts[m], WINDOW));
+    }
+
+    private static long rank(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.min(Math.max(rank, 1), sorted.length) - 1];
+    }
+
+    private synchronized void add(Metric metric, long value) {
+        int m = metric.ordinal();
+        if (samples[m] == null) {
+            samples[m] = new long[WINDOW];
+        }
+        samples[m][(int) (counts[m]++ % WINDOW)] = value; // the oldest value is overwritten
+        totals[m] += value;
+    }
+
+    Document start(long chars) {
+        return new Document(chars);
+    }
+
+    void record(Document document) {
+        add(Metric.PRECOMPILE_NANOS, document.nanos[Document.PRECOMPILE]);
+        add(Metric.BLOCK_NANOS, document.nanos[Document.BLOCKS]);
+        add(Metric.INLINE_NANOS, document.nanos[Document.INLINE]);
+        add(Metric.LINES, document.lines);
+        add(Metric.NODES, document.nodes);
+        add(Metric.MATCHERS, document.matchers);
+        ParseEvent event = document.event;
+        event.end();
+        if (event.shouldCommit()) { // only while a flight recording is running
+            event.chars = document.chars;
+            event.precompile = document.nanos[Document.PRECOMPILE];
+            event.blocks = document.nanos[Document.BLOCKS];
+            event.inline = document.nanos[Document.INLINE];
+            event.lines = document.lines;
+            event.nodes = document.nodes;
+            event.matchers = document.matchers;
+            event.commit();
+        }
+    }
+
+    void render(HTMLElement html, Appendable out, boolean document) throws IOException {
+        RenderEvent event = new RenderEvent();
+        event.begin();
+        ByteCounter counter = new ByteCounter(out);
+        long start = System.nanoTime();
+        if (document) {
+            html.writeDocument(counter);
+        } else {
+            html.writeTo(counter);
+        }
+        add(Metric.RENDER_NANOS, System.nanoTime() - start);
+        add(Metric.OUTPUT_BYTES, counter.bytes);
+        event.end();
+        if (event.shouldCommit()) {
+            event.bytes = counter.bytes;
+            event.commit();
+        }
+    }
+
+    static final class Document { // the counters of one compile call, only used by the thread that parses it
+        static final int PRECOMPILE = 0, BLOCKS = 1, INLINE = 2;
+
+        final long[] nanos = new long[3]; // time spent in each stage
+        final ParseEvent event; // null for a part of a document
+        final long chars;
+        int stage = -1; // the stage the time goes to now, -1 if the clock is stopped
+        long mark; // System.nanoTime of the last stage change
+        long lines, nodes, matchers;
+
+        Document(long chars) {
+            this.chars = chars;
+            this.event = new ParseEvent();
+            event.begin();
+        }
+
+        Document() { // a part that another thread parses, added to its document when it is done
+            this.chars = 0;
+            this.event = null;
+        }
+
+        void add(Document part) { // the stages add up the time of all threads
+            for (int s = 0; s < nanos.length; s++) {
+                nanos[s] += part.nanos[s];
+            }
+            lines += part.lines;
+            nodes += part.nodes;
+            matchers += part.matchers;
+        }
+
+        int enter(int next) { // the time since the last change goes to the stage before, which is returned
+            long now = System.nanoTime();
+            if (stage >= 0) {
+                nanos[stage] += now - mark;
+            }
+            int previous = stage;
+            stage = next;
+            mark = now;
+            return previous;
+        }
+    }
+
+    static final class NodeCounter implements MDListener { // counts the elements and texts the events describe, like the tree would have them
+        private final MDListener listener;
+        private final Document document; // gets the count
+
+        NodeCounter(MDListener listener, Document document) {
+            this.listener = listener;
+            this.document = document;
+        }
+
+        @Override public void startHeading(int level) { document.nodes++; listener.startHeading(level); }
+        @Override public void endHeading(int level) { listener.endHeading(level); }
+        @Override public void startParagraph() { document.nodes++; listener.startParagraph(); }
+        @Override public void endParagraph() { listener.endParagraph(); }
+        @Override public void startListItem() { document.nodes++; listener.startListItem(); }
+        @Override public void endListItem() { listener.endListItem(); }
+        @Override public void startList(boolean ordered) { document.nodes++; listener.startList(ordered); }
+        @Override public void endList(boolean ordered) { listener.endList(ordered); }
+        @Override public void startQuote() { document.nodes++; listener.startQuote(); }
+        @Override public void endQuote() { listener.endQuote(); }
+        @Override public void codeBlock(String info, String code) { document.nodes += 2; listener.codeBlock(info, code); }
+        @Override public void text(CharSequence text) { document.nodes++; listener.text(text); }
+        @Override public void code(CharSequence code) { document.nodes += 2; listener.code(code); }
+        @Override public void startEmphasis() { document.nodes++; listener.startEmphasis(); }
+        @Override public void endEmphasis() { listener.endEmphasis(); }
+        @Override public void startStrong() { document.nodes++; listener.startStrong(); }
+        @Override public void endStrong() { listener.endStrong(); }
+        @Override public void startStrikethrough() { document.nodes++; listener.startStrikethrough(); }
+        @Override public void endStrikethrough() { listener.endStrikethrough(); }
+        @Override public void startLink(String href) { document.nodes++; listener.startLink(href); }
+        @Override public void endLink() { listener.endLink(); }
+        @Override public void image(String src, String alt) { document.nodes++; listener.image(src, alt); }
+        @Override public void element(HTMLElement element) { document.nodes++; listener.element(element); }
+    }
+
+    private static final class ByteCounter implements Appendable { // counts the UTF-8 bytes written through it
+        private final Appendable out;
+        long bytes;
+
+        ByteCounter(Appendable out) {
+            this.out = out;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq) throws IOException {
+            return append(csq, 0, csq.length());
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) throws IOException {
+            for (int c = start; c < end; c++) {
+                count(csq.charAt(c));
+            }
+            out.append(csq, start, end);
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) throws IOException {
+            count(c);
+            out.append(c);
+            return this;
+        }
+
+        private void count(char c) {
+            bytes += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3; // a surrogate pair is four bytes
+        }
+    }
+
+    @Name("org.toex.Parse")
+    @Label("Markdown Parse")
+    @Category("Markdown")
+    static class ParseEvent extends Event {
+        @Label("Characters") long chars;
+        @Label("Precompile") @Timespan long precompile;
+        @Label("Block Parsing") @Timespan long blocks;
+        @Label("Inline Parsing") @Timespan long inline;
+        @Label("Lines") long lines;
+        @Label("Nodes") long nodes;
+        @Label("Regex Matchers") long matchers;
+    }
+
+    @Name("org.toex.Render")
+    @Label("Markdown Render")
+    @Category("Markdown")
+    static class RenderEvent extends Event {
+        @Label("Output") @DataAmount long bytes;
+    }
+}
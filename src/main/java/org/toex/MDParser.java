@@ -1,8 +1,12 @@
 package org.toex;
 
+import java.io.IOException;
+import java.io.Serial;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.function.BiFunction;
-import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -10,210 +14,550 @@ public class MDParser {
     private final Pattern hdrPattern = Pattern.compile("^( {0,3}#{1,6}) +(.*)"); // Pattern to identify Markdown headers with different levels
     private final Pattern oliPattern = Pattern.compile("^ *(\\d)[.)] (.*)"); // Pattern to identify ordered list items in Markdown
     private final Pattern uliPattern = Pattern.compile("^ *([-+*]) (.*)"); // Pattern to identify unordered list items in Markdown
-    private final Pattern bdiPattern = Pattern.compile("(\\*+)(.*?)\\1"); // Pattern to identify bold and italic text in Markdown
+    private final Pattern bdiPattern = Pattern.compile("(?<stars>\\*+)(.*?)\\k<stars>"); // Pattern to identify bold and italic text in Markdown
     private final Pattern strPattern = Pattern.compile("(~{2})(.*?)(~{2})"); // Pattern to identify bold and italic text in Markdown
     private final Pattern lnkPattern = Pattern.compile("(?<!!)\\[(.*?)\\]\\((.*?)\\)"); // Pattern to identify links in Markdown
     private final Pattern imgPattern = Pattern.compile("!\\[(.*?)]\\((.*?)\\)"); // Pattern to identify images in Markdown
     private final Pattern quoPattern = Pattern.compile("^ {0,4}>(.*)"); // Pattern to identify blockquotes in Markdown
     private final Pattern codePattern = Pattern.compile("\\`(.*?)\\`");
-    private final Pattern doubleNLPattern = Pattern.compile("(?m)(\\s*\\n){2,}"); // Pattern to remove multiple consecutive newlines
-    private final Pattern continuePattern = Pattern.compile("(?m)^(?!`{3})(?!\\s*#{1,6}\\s)(.+)\\n(?!\\s*(?:[\\-*+]|\\#{1,6})\\s)(?!\\s*\\d[.)]\\s)(?!\\s*>)(?!`{3})(.+)"); // Pattern to merge lines that belong to the same paragraph
-    private final Pattern blockCodePattern = Pattern.compile("(?m)^ {0,3}`{3} *(.*)\\n((?:.*|\\n)+)\\n {0,3}`{3,}"); // Pattern to identify code blocks in Markdown
-
-    private final Pattern[] inlinePatterns = { // Array of inline patterns used for parsing inline Markdown elements
-            bdiPattern, strPattern, lnkPattern, imgPattern, codePattern,
-    };
-
-    private final List<BiFunction<HTMLElement, String, Boolean>> inlineParsers = Arrays.asList(
-            this::parseCode,
-            this::parseBoldItalic,
-            this::parseStriketrough,
-            this::parseImage,
-            this::parseLink
-    );
 
-    private final List<BiFunction<HTMLElement, ListIterator<String>, Boolean>> parsers = Arrays.asList(
+    private final InlineRules inlineRules = new InlineRules() // inline rules, tried in this order on every inline match
+            .add("code", InlineScanner.Kind.CODE, codePattern, this::parseCode)
+            .add("boldItalic", InlineScanner.Kind.BOLD_ITALIC, bdiPattern, this::parseBoldItalic)
+            .add("strikethrough", InlineScanner.Kind.STRIKETHROUGH, strPattern, this::parseStriketrough)
+            .add("image", InlineScanner.Kind.IMAGE, imgPattern, this::parseImage)
+            .add("link", InlineScanner.Kind.LINK, lnkPattern, this::parseLink);
+
+    private final List<BiFunction<BlockEmitter.Container, ParseContext, Boolean>> parsers = Arrays.asList( // blocks without nested content
             this::parseHeader,
             this::parseQuote,
-            this::parseBlockCode,
-            (html, i) -> parseOL(html, i, 0, 0),
-            (html, i) -> parseUL(html, i, 0, 0)
+            this::parseBlockCode
     );
 
-    int inList = 0; // Tracks the current depth of list nesting
+    private static class Frame { // one entry of the container stack in parseTopLevelBlock
+        final ParseContext document; // the document or the quote content the frame belongs to
+        BlockEmitter.Container html; // container new blocks are added to, null for the content of a quote
+        final Pattern itemPattern; // pattern of the list items, null for a plain sequence of blocks
+        final String tag; // tag of the list
+        final int nesting; // extra indentation a nested list needs
+        final boolean top; // a top level block of the document, which ends after one block
+        int parentIndent; // indentation of the parent list
+        int indent; // indentation of the current list relative to its parent
+        boolean parsed; // a block of this sequence was parsed already
 
-    private String mergeLines(String mdText) { // Tested
-        while(continuePattern.matcher(mdText).find()) { // finds any line that is not a new paragraph
-            mdText = continuePattern.matcher(mdText).replaceFirst("$1 $2"); // and merges them, hope not merging something it shouldn't
+        Frame(ParseContext quote) { // the top level blocks of a quote, one after the other
+            this(quote, null, null, null, 0, false);
+        }
+
+        Frame(ParseContext document, BlockEmitter.Container html, boolean top) {
+            this(document, html, null, null, 0, top);
+        }
+
+        Frame(ParseContext document, BlockEmitter.Container html, Pattern itemPattern, String tag, int nesting) {
+            this(document, html, itemPattern, tag, nesting, false);
+        }
+
+        private Frame(ParseContext document, BlockEmitter.Container html, Pattern itemPattern, String tag, int nesting, boolean top) {
+            this.document = document;
+            this.html = html;
+            this.itemPattern = itemPattern;
+            this.tag = tag;
+            this.nesting = nesting;
+            this.top = top;
         }
-        return doubleNLPattern.matcher(mdText).replaceAll("\n"); // removes all empty lines and returns it back
     }
 
-    private String precompile(String md) { // Tested
-        StringBuilder markdown = new StringBuilder(); // string builder for markdown simplify process
-        Matcher blockCodeMatcher = blockCodePattern.matcher(md); // matcher for code block
+    private static final int MIN_CHUNK = 1 << 14; // characters parsed by one task at least, smaller tasks cost more than they save
+
+    private final LineMerger lineMerger = new LineMerger(); // merges lines that belong to the same paragraph in one pass
+    private volatile MDMetrics metrics; // null unless timings and counters are wanted, then every compile call adds to it
+
+    String precompile(String md) { // Tested
+        StringBuilder markdown = new StringBuilder(md.length()); // string builder for markdown simplify process
+        FenceScanner fences = new FenceScanner(); // finds the code blocks in the same pass
         int lastEnd = 0; // last string position of code block
-        while(blockCodeMatcher.find()) { // find code blocks
-            markdown.append(mergeLines(md.substring(lastEnd, blockCodeMatcher.start()))) // change code blocks and adds them into new markdown
-                    .append(blockCodeMatcher.group()); // don't change code blocks and adds them into new markdown
-            lastEnd = blockCodeMatcher.end(); // reset last end position of code block
+        for (int c = 0; c <= md.length(); c++) {
+            if (c < md.length() ? fences.accept(md.charAt(c)) : fences.finish()) { // a code block ends here
+                int start = (int) fences.openerStart, end = (int) fences.end;
+                lineMerger.merge(md, lastEnd, start, markdown) // merge the lines before the code block and adds them into new markdown
+                        .append(md, start, end); // don't change code blocks and adds them into new markdown
+                lastEnd = end; // reset last end position of code block
+            }
         }
-        return markdown.append(mergeLines(md.substring(lastEnd))).toString(); // add left markdown after code block and return it back
+        return lineMerger.merge(md, lastEnd, md.length(), markdown).toString(); // add left markdown after code block and return it back
     }
 
     public HTMLElement compile(String md) { // Tested
-        HTMLElement html = new HTMLElement(); // creates a new html tree
+        if (metrics != null) { // the counted path goes through the events
+            TreeBuilder tree = new TreeBuilder();
+            compile(md, tree);
+            return tree.getRoot();
+        }
         String precompiledMarkdown = precompile(md); // run precompiler to get rid of empty lines and merge continuously paragraphs
-        LinkedList<String> lines = new LinkedList<>(Arrays.asList(precompiledMarkdown.split("\n"))); // separates markdown into lines
-        ListIterator<String> lineIterator = lines.listIterator(); // initializes iterator to iterate between lines
-        parseMarkdown(html, lineIterator); // calls recursive version of this parser function to build html
-        return html; // returns built tree back to
+        return parse(precompiledMarkdown); // returns built tree back to
+    }
+
+    public void compile(String md, MDListener listener) { // like compile, but the elements go to the listener instead of a tree
+        MDMetrics metrics = this.metrics;
+        if (metrics == null) {
+            parse(precompile(md), listener);
+            return;
+        }
+        MDMetrics.Document document = metrics.start(md.length());
+        parse(precompile(md, document), new MDMetrics.NodeCounter(listener, document), document);
+        metrics.record(document);
+    }
+
+    String precompile(String md, MDMetrics.Document document) { // like precompile, timed in document unless it is null
+        if (document == null) {
+            return precompile(md);
+        }
+        int previous = document.enter(MDMetrics.Document.PRECOMPILE);
+        String precompiled = precompile(md);
+        document.enter(previous);
+        return precompiled;
+    }
+
+    // compile, compileParallel, writeDocument, stream and MDDocument add to the metrics, a RenderCache
+    // doesn't count the blocks it parses. compileParallel adds up the time of all threads in the stages,
+    // and the render time of writeDocument(Path, Appendable) includes the parsing of the parts.
+    public MDParser setMetrics(MDMetrics metrics) { // null turns the metrics off again
+        this.metrics = metrics;
+        return this;
+    }
+
+    public MDMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void writeDocument(Path file, Appendable out) throws IOException { // the document of a file of any size, parsed part by part while it is written
+        new MarkdownFile(this, file).writeDocument(out);
+    }
+
+    public void stream(Path file, MDListener listener) throws IOException { // the events of a file of any size, part by part
+        new MarkdownFile(this, file).parse(listener);
+    }
+
+    LineMerger lineMerger() {
+        return lineMerger;
+    }
+
+    HTMLElement parse(String precompiledMarkdown) { // parses text that went through precompile already
+        TreeBuilder tree = new TreeBuilder(); // the tree is just one listener
+        parse(precompiledMarkdown, tree);
+        return tree.getRoot();
+    }
+
+    void parse(String precompiledMarkdown, MDListener listener) {
+        ParseContext context = new ParseContext(new LineCursor(precompiledMarkdown), new BlockEmitter(listener)); // separates markdown into lines by their offsets
+        parseMarkdown(context); // parses the lines into events
+    }
+
+    void parse(String precompiledMarkdown, MDListener listener, MDMetrics.Document document) { // counted in document unless it is null
+        if (document == null) {
+            parse(precompiledMarkdown, listener);
+            return;
+        }
+        int previous = document.enter(MDMetrics.Document.BLOCKS);
+        LineCursor lines = new LineCursor(precompiledMarkdown);
+        document.lines += lines.count();
+        parseMarkdown(new ParseContext(lines, new BlockEmitter(listener), document, null));
+        document.enter(previous);
     }
 
-    private void parseMarkdown(HTMLElement html, ListIterator<String> i) {
-        if(i.hasNext()) {
-            boolean parsed = parsers.stream().anyMatch(parser -> parser.apply(html, i));
-            if(!parsed) {
-                parseParagraph(html, i); // parse the line as a paragraph if no other pattern matches
+    HTMLElement parse(String precompiledMarkdown, MDMetrics.Document document) {
+        TreeBuilder tree = new TreeBuilder();
+        parse(precompiledMarkdown, document == null ? tree : new MDMetrics.NodeCounter(tree, document), document);
+        return tree.getRoot();
+    }
+
+    String signature() { // everything besides the text that changes the output
+        return inlineRules.signature();
+    }
+
+    List<String> splitBlocks(String precompiledMarkdown) { // parts of the text that parse on their own to the same elements
+        int[] starts = partStarts(precompiledMarkdown);
+        List<String> blocks = new ArrayList<>(starts.length);
+        for (int p = 0; p < starts.length; p++) {
+            blocks.add(part(precompiledMarkdown, starts, p, p + 1));
+        }
+        return blocks;
+    }
+
+    private int[] partStarts(String precompiledMarkdown) { // offset of the first line of every part
+        LineCursor lines = new LineCursor(precompiledMarkdown);
+        Splitter splitter = new Splitter();
+        int[] starts = new int[16];
+        int parts = 0;
+        for (int line = 0; line < lines.count(); line++) {
+            lines.seek(line);
+            if (splitter.startsPart(lines.toString()) || line == 0) { // the first line starts the first part
+                if (parts == starts.length) {
+                    starts = Arrays.copyOf(starts, parts * 2);
+                }
+                starts[parts++] = lines.start(line);
             }
-            if (inList == 0) {
-                parseMarkdown(html, i); // if something parsed then continue to parse next lines
+            if (splitter.nested) {
+                break; // no part starts after it, the rest of the text is the last part
             }
         }
+        return Arrays.copyOf(starts, parts);
     }
 
-    private boolean parseQuote(HTMLElement html, ListIterator<String> i) {
-        String line = i.next(); // get the current line
-        Matcher quoMatcher = quoPattern.matcher(line); // match the line with blockquote pattern
-        if(quoMatcher.find()) { // if blockquote pattern matches
-            StringBuilder sb = new StringBuilder(); // initialize a StringBuilder to accumulate blockquote content
-            sb.append(quoMatcher.group(1)); // append the matched blockquote content
-            quoMatcher.group(); // call group to ensure matching
-            while(i.hasNext()) {
-                String quoLine = i.next(); // move to the next line
-                quoMatcher = quoPattern.matcher(quoLine); // check if it's still part of the blockquote
-                if(quoMatcher.find()) {
-                    sb.append("\n").append(quoMatcher.group(1)); // add content to the blockquote
-                } else {
-                    break; // exit the loop when blockquote ends
-                }
+    private static String part(String text, int[] starts, int from, int to) { // the parts from..to without the line break after them
+        return text.substring(starts[from], to < starts.length ? starts[to] - 1 : text.length());
+    }
+
+    public HTMLElement compileParallel(String md) { // the same tree as compile, the parts of the document are parsed on all cores
+        return compileParallel(md, ForkJoinPool.commonPool());
+    }
+
+    public HTMLElement compileParallel(String md, ForkJoinPool pool) {
+        MDMetrics metrics = this.metrics;
+        MDMetrics.Document document = metrics != null ? metrics.start(md.length()) : null;
+        String precompiled = precompile(md, document);
+        int[] starts = partStarts(precompiled);
+        HTMLElement html;
+        if (starts.length < 2) {
+            html = parse(precompiled, document);
+        } else {
+            int chunk = Math.max(MIN_CHUNK, precompiled.length() / (pool.getParallelism() * 8)); // some tasks per core to even out the load
+            PartsTask task = new PartsTask(this, precompiled, starts, 0, starts.length, chunk, document != null);
+            html = pool.invoke(task);
+            if (document != null) document.add(task.document);
+        }
+        if (metrics != null) metrics.record(document);
+        return html;
+    }
+
+    private static class PartsTask extends RecursiveTask<HTMLElement> { // parses the parts from..to, in two halves if they are too long
+        @Serial
+        private static final long serialVersionUID = 1L; // a ForkJoinTask is Serializable, this one is never serialized
+        private final transient MDParser parser;
+        private final String text;
+        private final int[] starts;
+        private final int from, to, chunk;
+        final transient MDMetrics.Document document; // counters of these parts, null without metrics
+
+        PartsTask(MDParser parser, String text, int[] starts, int from, int to, int chunk, boolean counted) {
+            this.parser = parser;
+            this.text = text;
+            this.starts = starts;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+            this.document = counted ? new MDMetrics.Document() : null;
+        }
+
+        @Override
+        protected HTMLElement compute() {
+            int end = to < starts.length ? starts[to] : text.length();
+            if (to - from == 1 || end - starts[from] <= chunk) {
+                return parser.parse(part(text, starts, from, to), document); // consecutive parts parse on their own as well
             }
-            HTMLElement quote = compile(sb.toString()); // compile the blockquote content recursively
-            quote.setTag("blockquote"); // set the tag as blockquote
-            try {
-                html.add(quote); // add the blockquote element to the HTML tree
-            } catch (Exception e) {
-                throw new RuntimeException(e); // handle runtime exceptions
+            int middle = Arrays.binarySearch(starts, from, to, (starts[from] + end) >>> 1); // halves of about the same length
+            middle = Math.min(Math.max(middle < 0 ? -middle - 1 : middle, from + 1), to - 1);
+            PartsTask first = new PartsTask(parser, text, starts, from, middle, chunk, document != null);
+            first.fork();
+            PartsTask last = new PartsTask(parser, text, starts, middle, to, chunk, document != null);
+            HTMLElement second = last.compute();
+            HTMLElement html = first.join();
+            if (document != null) { // join makes the counters of the other thread visible
+                document.add(first.document);
+                document.add(last.document);
             }
-            if(i.hasNext()) i.previous(); // move back one step after exiting the blockquote
-            return true; // indicate a successful match
+            for (HTMLNode child : second.children()) {
+                html.adopt(child);
+            }
+            html.children().addAll(second.children()); // stitched in document order
+            return html;
         }
-        i.previous(); // revert iterator if no match found
-        return false; // indicate no match found
     }
 
-    private boolean parseBlockCode(HTMLElement html, ListIterator<String> i) {
-        String line = i.next(); // get the current line
+    class Splitter { // looks at the precompiled lines one by one and finds where such a part starts
+        private boolean first = true; // no line seen yet
+        private boolean previousEmpty; // the line before was empty, a part must not end with it
+        private boolean inFence; // inside a code block, lines are not parsed
+        private boolean nested; // a list item started another list, everything after it goes into that list
 
-        if (line.stripTrailing().matches("^ {0,4}```(.*)")) {
-            StringBuilder sb = new StringBuilder();
-            sb.append(line).append("\n");
-            while(i.hasNext()) {
-                String codeLine = i.next();
-                if(codeLine.stripTrailing().matches("^ {0,4}```")) {
-                    break;
-                } else {
-                    sb.append(codeLine).append("\n");
+        boolean startsPart(String text) { // true if a new part starts with this line
+            boolean starts = false;
+            if (inFence) {
+                inFence = !isFenceClose(text); // same closing check as parseBlockCode
+            } else {
+                boolean quote = quoPattern.matcher(text).find();
+                Matcher itemMatcher = itemMatcher(text);
+                starts = !first && !previousEmpty && !nested && !quote && itemMatcher == null; // a quote or list before it ends here
+                if (!quote) { // the quote is parsed as a document of its own, its code blocks stay inside it
+                    String content = text;
+                    int markers = 0;
+                    for (Matcher m = itemMatcher; m != null; m = itemMatcher(content)) { // the block inside the list items
+                        content = m.group(2);
+                        markers++;
+                    }
+                    nested |= markers > 1;
+                    inFence = isFenceOpen(content); // same opening check as parseBlockCode
                 }
             }
-            sb.append(line).append("```");
-            Matcher blockCodeMatcher = blockCodePattern.matcher(sb.toString().stripIndent());
-            if(blockCodeMatcher.find()) {
-                HTMLElement pre = new HTMLElement("pre", blockCodeMatcher.group(2));
-                pre.addKey("class", blockCodeMatcher.group(1));
-                try {
-                    html.add(pre);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
+            first = false;
+            previousEmpty = text.isEmpty();
+            return starts;
+        }
+    }
+
+    private Matcher itemMatcher(String line) {
+        Matcher matcher = oliPattern.matcher(line);
+        if (matcher.find()) {
+            return matcher;
+        }
+        matcher = uliPattern.matcher(line);
+        return matcher.find() ? matcher : null;
+    }
+
+    private void parseMarkdown(ParseContext context) {
+        while(context.lines.hasNext()) {
+            parseTopLevelBlock(context); // top level blocks don't depend on each other
+        }
+    }
+
+    void parseTopLevelBlock(ParseContext context) { // parses one block and everything nested in it
+        Deque<Frame> stack = new ArrayDeque<>(); // open containers and quotes, instead of one recursive call per line, list item and quote
+        stack.push(new Frame(context, context.events.root(), true));
+        while(!stack.isEmpty()) {
+            Frame frame = stack.peek();
+            ParseContext document = frame.document; // the lines and the list state of a quote are its own
+            LineCursor lines = document.lines;
+            if(frame.html == null) { // the content of a quote, parsed like a document
+                if(lines.hasNext()) {
+                    stack.push(new Frame(document, document.events.root(), true));
+                } else {
+                    stack.pop();
+                    document.quote.endQuote();
+                }
+            } else if(frame.itemPattern == null) { // a sequence of blocks
+                if((frame.parsed && (document.inList != 0 || frame.top)) || !lines.hasNext()) { // a list item takes only one block
+                    stack.pop();
+                    if(frame.top) {
+                        document.events.flush(); // the lists of this block are finished
+                    }
+                    continue;
+                }
+                frame.parsed = true;
+                Frame list = parseBlock(frame.html, document);
+                if(document.quoted != null) { // a quote was started, its content comes first
+                    stack.push(new Frame(document.quoted));
+                    document.quoted = null;
+                } else if(list != null) { // a list was started, parse the content of its first item
+                    if(!frame.top) {
+                        document.events.record(); // blocks can go back into lists that look finished, see BlockEmitter
+                    }
+                    stack.push(list);
+                    stack.push(new Frame(document, list.html, false));
+                }
+            } else { // a list whose last item is parsed
+                if(!lines.hasNext()) {
+                    stack.pop();
+                } else if(!parseListItem(frame, document)) { // the list ends with the first line that is no item
+                    document.inList = 0;
+                    stack.pop();
+                } else {
+                    stack.push(new Frame(document, frame.html, false)); // parse the content of the next item
                 }
             }
-            return true; // indicate a successful match
         }
-        i.previous(); // revert iterator if no match found
-        return false; // indicate no match found
     }
 
-    private boolean parseOL(HTMLElement html, ListIterator<String> i, int parentIndent, int indent) {
-        String line = i.next(); // get the current line
-        Matcher olMatcher = oliPattern.matcher(line); // match the line with the ordered list pattern
-        if (olMatcher.find()) { // if the line matches an ordered list item
-            HTMLElement currentTree = html; // initialize the current HTML element
-            if(inList == 0 || olMatcher.start(1) >= parentIndent+indent + 3) { // if not in a list or it's a nested list
-                parentIndent = parentIndent + indent; // update parent indentation
-                indent = olMatcher.start(1) - parentIndent; // calculate the indentation for the current list
-                currentTree = new HTMLElement("ol", (HTMLElement) null); // create a new ordered list element
-                try {
-                    html.add(currentTree); // add the ordered list to the HTML tree
-                } catch (Exception e) {
-                    throw new RuntimeException(e); // handle exceptions
-                }
-                inList++; // increment the list nesting level
-            } else if(inList > 1 && olMatcher.start(1) < parentIndent + 3) { // if the list is not nested
-                currentTree = currentTree.getParent(); // move to the parent HTML element
-                indent = 0; // reset the indentation
-                inList--; // decrement the list nesting level
+    private Frame parseBlock(BlockEmitter.Container html, ParseContext context) { // returns the list frame if the line starts a list
+        if(parsers.stream().anyMatch(parser -> parser.apply(html, context))) {
+            return null;
+        }
+        Frame ol = new Frame(context, html, oliPattern, "ol", 3);
+        if(parseListItem(ol, context)) {
+            return ol;
+        }
+        Frame ul = new Frame(context, html, uliPattern, "ul", 2);
+        if(parseListItem(ul, context)) {
+            return ul;
+        }
+        parseParagraph(html, context); // parse the line as a paragraph if no other pattern matches
+        return null;
+    }
+
+    private boolean parseQuote(BlockEmitter.Container html, ParseContext context) {
+        LineCursor lines = context.lines;
+        int content = quoteContent(lines); // where the blockquote content of the current line starts
+        if(content < 0) {
+            return false; // indicate no match found
+        }
+        int[] starts = new int[8], ends = new int[8]; // the blockquote content of every line, as offsets in the text
+        int count = 0;
+        boolean precompiled = true; // precompile would not change the content, so the lines can stay where they are
+        do {
+            int end = lines.contiguous() ? lineEnd(lines, content) : lines.length(); // the lines of a quote have no line terminator left
+            precompiled &= end == lines.length() && (count == 0 || startsBlock(lines, content));
+            if(count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
             }
-            i.remove(); // remove the current line from the iterator
-            i.add(olMatcher.group(2)); // add the list item's content to the iterator
-            i.previous(); // move back to process the added content
-            parseMarkdown(currentTree, i); // parse the content of the list item
-            if(i.hasNext()) if(!parseOL(currentTree, i, parentIndent, indent)) inList=0; // check for nested lists
-            return true; // indicate a successful match
+            starts[count] = lines.offset() + content;
+            ends[count] = lines.offset() + end;
+            count++;
+            lines.advance(); // move to the next line
+        } while(lines.hasNext() && (content = quoteContent(lines)) >= 0); // check if it's still part of the blockquote
+        LineCursor quoted;
+        if(precompiled) {
+            quoted = new LineCursor(lines.text(), starts, ends, count); // the content is parsed where it is, nothing is copied
+        } else {
+            StringBuilder sb = new StringBuilder(); // the content as a document of its own
+            for(int l = 0; l < count; l++) {
+                sb.append(l == 0 ? "" : "\n").append(lines.text(), starts[l], ends[l]);
+            }
+            int stage = context.metrics != null ? context.metrics.enter(MDMetrics.Document.PRECOMPILE) : 0;
+            quoted = new LineCursor(precompile(sb.toString()));
+            if(context.metrics != null) context.metrics.enter(stage);
         }
-        i.previous(); // revert iterator if no match found
-        return false; // indicate no match found
+        if(context.metrics != null) context.metrics.lines += quoted.count();
+        MDListener listener = context.events.at(html);
+        listener.startQuote();
+        context.quoted = new ParseContext(quoted, new BlockEmitter(listener), context.metrics, listener); // parseTopLevelBlock parses it next
+        return true; // indicate a successful match, the line after the blockquote is still the current one
     }
 
-    private boolean parseUL(HTMLElement html, ListIterator<String> i, int parentIndent, int indent) {
-        String line = i.next(); // get the current line
-        Matcher ulMatcher = uliPattern.matcher(line); // match the line with the unordered list pattern
-        if (ulMatcher.find()) { // if the line matches an unordered list item
-            HTMLElement currentTree = html; // initialize the current HTML element
-            if(inList == 0 || ulMatcher.start(1) >= parentIndent+indent + 2) { // if not in a list or it's a nested list
-                parentIndent = parentIndent + indent; // update parent indentation
-                indent = ulMatcher.start(1) - parentIndent; // calculate the indentation for the current list
-                currentTree = new HTMLElement("ul", (HTMLElement) null); // create a new unordered list element
-                try {
-                    html.add(currentTree); // add the unordered list to the HTML tree
-                } catch (Exception e) {
-                    throw new RuntimeException(e); // handle exceptions
-                }
-                inList++; // increment the list nesting level
-            } else if(inList > 1 && ulMatcher.start(1) < parentIndent + 2) { // if the list is not nested
-                currentTree = currentTree.getParent(); // move to the parent HTML element
-                indent = 0; // reset the indentation
-                inList--; // decrement the list nesting level
+    private static int quoteContent(CharSequence line) { // the end of what ^ {0,4}> matches, -1 if the line is no blockquote
+        int i = 0;
+        while(i < line.length() && i < 4 && line.charAt(i) == ' ') i++;
+        return i < line.length() && line.charAt(i) == '>' ? i + 1 : -1;
+    }
+
+    private static int lineEnd(CharSequence line, int from) { // where (.*) stops
+        while(from < line.length() && !LineMerger.isLineTerminator(line.charAt(from))) from++;
+        return from;
+    }
+
+    private boolean startsBlock(CharSequence line, int from) { // precompile never merges such a line into the one before it or removes it
+        LineMerger.LineKind kind = lineMerger.classify(line, from, line.length(), new int[]{-1, -1});
+        return kind != LineMerger.LineKind.TEXT && kind != LineMerger.LineKind.BLANK;
+    }
+
+    private boolean parseBlockCode(BlockEmitter.Container html, ParseContext context) {
+        LineCursor lines = context.lines;
+        if (!isFenceOpen(lines)) { // checks the line without copying it
+            return false;
+        }
+        String line = lines.toString(); // get the current line
+        boolean plain = lines.contiguous() && line.charAt(0) == '`' && isPlain(line); // stripIndent would not change the block, which is one slice of the text
+        lines.advance();
+        int first = lines.index(), last = first; // the code lines
+        int end = -1; // a code line after the first one that closes the block like a fence, e.g. ```java, see FenceScanner
+        while(lines.hasNext()) {
+            boolean closing = isFenceClose(lines);
+            if (!closing) {
+                plain &= isPlain(lines);
+                if (end < 0 && last > first && FenceScanner.isFence(lines)) end = last;
+                last++;
+            }
+            lines.advance();
+            if (closing) {
+                break;
+            }
+        }
+        if (plain) { // the code is a slice of the text
+            if (end < 0) end = last; // the opening line added after the code lines closes it
+            if (end > first) { // without code lines the closing fence comes too early
+                context.events.at(html).codeBlock(info(line), lines.text().substring(lines.start(first), lines.end(end - 1)));
+            }
+            return true;
+        }
+        StringBuilder sb = new StringBuilder(); // the block as it was matched before, with the opening line as closing fence
+        sb.append(line).append("\n");
+        for (int l = first; l < last; l++) {
+            sb.append(lines.text(), lines.start(l), lines.end(l)).append("\n");
+        }
+        String block = sb.append(line).append("```").toString().stripIndent();
+        FenceScanner fences = new FenceScanner();
+        for (int c = 0; c <= block.length(); c++) {
+            if (c < block.length() ? fences.accept(block.charAt(c)) : fences.finish()) { // the first code block in it
+                context.events.at(html).codeBlock(info(block.substring((int) fences.openerStart, (int) fences.openerEnd)),
+                        block.substring((int) fences.openerEnd + 1, (int) fences.closerStart - 1));
+                break;
             }
-            i.remove(); // remove the current line from the iterator
-            i.add(ulMatcher.group(2)); // add the list item's content to the iterator
-            i.previous(); // move back to process the added content
-            parseMarkdown(currentTree, i); // parse the content of the list item
-            if(i.hasNext()) if(!parseUL(currentTree, i, parentIndent, indent)) inList=0; // check for nested lists
+        }
+        return true; // indicate a successful match
+    }
+
+    private static String info(String opener) { // the text after the backticks of an opening fence, like ` {0,3}`{3} *(.*)
+        int i = 0;
+        while (opener.charAt(i) == ' ') i++;
+        i += 3;
+        while (i < opener.length() && opener.charAt(i) == ' ') i++;
+        return opener.substring(i);
+    }
+
+    private static boolean isPlain(CharSequence line) { // stripIndent and FenceScanner take such a line as it is
+        for (int c = 0; c < line.length(); c++) {
+            char ch = line.charAt(c);
+            if (ch != '\n' && LineMerger.isLineTerminator(ch)) return false;
+        }
+        return line.isEmpty() || !Character.isWhitespace(line.charAt(line.length() - 1));
+    }
+
+    private boolean isFence(CharSequence line) {
+        int i = 0;
+        while(i < line.length() && i < 4 && line.charAt(i) == ' ') i++; // up to four spaces of indentation
+        return i + 3 <= line.length() && line.charAt(i) == '`' && line.charAt(i + 1) == '`' && line.charAt(i + 2) == '`';
+    }
+
+    private boolean isFenceOpen(CharSequence line) { // what ^ {0,4}```(.*) matches after stripTrailing
+        if (!isFence(line)) return false;
+        int end = strippedLength(line);
+        for (int c = 0; c < end; c++) {
+            if (LineMerger.isLineTerminator(line.charAt(c))) return false; // . doesn't match it
+        }
+        return true;
+    }
+
+    private boolean isFenceClose(CharSequence line) { // what ^ {0,4}``` matches after stripTrailing
+        int i = 0;
+        while(i < line.length() && i < 4 && line.charAt(i) == ' ') i++;
+        return isFence(line) && strippedLength(line) == i + 3;
+    }
+
+    private static int strippedLength(CharSequence line) { // length after String.stripTrailing
+        int end = line.length();
+        while (end > 0 && Character.isWhitespace(line.charAt(end - 1))) end--;
+        return end;
+    }
+
+    private boolean parseListItem(Frame list, ParseContext context) {
+        LineCursor lines = context.lines;
+        Matcher itemMatcher = matcher(list.itemPattern, lines, context); // match the current line with the list item pattern
+        if (itemMatcher.find()) { // if the line matches a list item
+            BlockEmitter.Container currentTree = list.html; // initialize the current container
+            if(context.inList == 0 || itemMatcher.start(1) >= list.parentIndent + list.indent + list.nesting) { // if not in a list or it's a nested list
+                list.parentIndent = list.parentIndent + list.indent; // update parent indentation
+                list.indent = itemMatcher.start(1) - list.parentIndent; // calculate the indentation for the current list
+                currentTree = context.events.startList(list.html, list.tag.equals("ol")); // start a new list
+                context.inList++; // increment the list nesting level
+            } else if(context.inList > 1 && itemMatcher.start(1) < list.parentIndent + list.nesting) { // if the list is not nested
+                currentTree = currentTree.parent; // move to the parent list
+                list.indent = 0; // reset the indentation
+                context.inList--; // decrement the list nesting level
+            }
+            list.html = currentTree; // the next item is added here
+            lines.narrow(itemMatcher.start(2), itemMatcher.end(2)); // only the list item's content stays visible
             return true; // indicate a successful match
         }
-        i.previous(); // revert iterator if no match found
         return false; // indicate no match found
     }
 
-    private Pattern inlinePatterns() {
-        StringBuilder inlineRegex = new StringBuilder(); // initialize a StringBuilder for inline patterns
-        Predicate<Pattern> isNotEmpty = s -> !(s.pattern().isEmpty()); // define a predicate to check if a pattern is non-empty
-        Iterator<Pattern> i = Arrays.stream(inlinePatterns).filter(isNotEmpty).iterator(); // filter non-empty patterns
-        while(i.hasNext()) { // iterate through the filtered patterns
-            String pattern =  i.next().pattern(); // get the pattern string
-            inlineRegex.append(pattern+(i.hasNext()?"|":"")); // append the pattern with a separator if more patterns exist
-        }
-        return Pattern.compile(inlineRegex.toString()); // return the compiled regex for inline patterns
+    public MDParser addInlineRule(String name, Pattern pattern, BiFunction<HTMLElement, String, Boolean> parser) {
+        inlineRules.add(name, pattern, parser); // the combined inline pattern is compiled again on the next paragraph
+        return this;
+    }
+
+    public MDParser removeInlineRule(String name) {
+        inlineRules.remove(name);
+        return this;
     }
 
     private boolean parseBoldItalic(HTMLElement html, String text) {
@@ -221,15 +565,7 @@ public class MDParser {
         if(matcher.find()) {
             int starCount = matcher.group(1).length();
             try {
-                if (starCount % 2 == 1) {
-                    if(starCount > 1) {
-                        html.add(new HTMLElement("em", new HTMLElement("strong", matcher.group(2).trim())));
-                    } else {
-                        html.add(new HTMLElement("em", matcher.group(2).trim()));
-                    }
-                } else if(starCount % 2 == 0){
-                    html.add(new HTMLElement("strong", matcher.group(2).trim()));
-                }
+                html.add(InlineScanner.boldItalic(starCount, matcher.group(2)));
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
@@ -242,7 +578,7 @@ public class MDParser {
         Matcher matcher = strPattern.matcher(text);
         if(matcher.find()) {
             try {
-                html.add(new HTMLElement("s", matcher.group(2).trim()));
+                html.add(InlineScanner.strikethrough(matcher.group(2)));
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
@@ -255,7 +591,7 @@ public class MDParser {
         Matcher matcher = codePattern.matcher(text);
         if(matcher.find()) {
             try {
-                html.add(new HTMLElement("code", matcher.group(1)));
+                html.add(InlineScanner.code(matcher.group(1)));
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
@@ -267,10 +603,8 @@ public class MDParser {
     private boolean parseLink(HTMLElement html, String text) {
         Matcher matcher = lnkPattern.matcher(text); // check for links
         if(matcher.find()) { // if a link is found
-            HTMLElement a = new HTMLElement("a", matcher.group(1)); // create an anchor element with link text
-            a.addKey("href", matcher.group(2)); // add the href attribute with the link URL
             try {
-                html.add(a); // add the link element to the text
+                html.add(InlineScanner.link(matcher.group(1), matcher.group(2))); // add the link element to the text
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
@@ -282,11 +616,8 @@ public class MDParser {
     private boolean parseImage(HTMLElement html, String text) {
         Matcher matcher = imgPattern.matcher(text); // check for images
         if(matcher.find()) { // if an image is found
-            HTMLElement img = new HTMLElement("img", (HTMLElement) null); // create an image element
-            img.addKey("src", matcher.group(2)); // add the src attribute with the image URL
-            img.addKey("alt", matcher.group(1)); // add the alt attribute with the image description
             try {
-                html.add(img); // add the image element to the text
+                html.add(InlineScanner.image(matcher.group(1), matcher.group(2))); // add the image element to the text
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
@@ -295,40 +626,66 @@ public class MDParser {
         return false;
     }
 
-    private void parseParagraph(HTMLElement html, ListIterator<String> i) {
-        String line = i.next().trim(); // get the current line
-        Matcher inlineMatcher = inlinePatterns().matcher(line); // match the line with inline patterns
-        HTMLElement text = new HTMLElement((inList > 0) ? "li" : "p", (HTMLElement) null); // create a list item or paragraph element based on context
-        int lastEnd = 0; // track the last match's end position
+    private void parseParagraph(BlockEmitter.Container html, ParseContext context) {
+        LineCursor lines = context.lines;
+        String line = lines.trimmed(); // get the current line
+        lines.advance();
+        MDListener listener = context.events.at(html);
+        boolean item = context.inList > 0; // a list item or a paragraph
+        if (item) listener.startListItem(); else listener.startParagraph();
+        InlineRules.Compiled rules = inlineRules.compiled(); // one consistent view of the rules for this line
+        int stage = context.metrics != null ? context.metrics.enter(MDMetrics.Document.INLINE) : 0;
+        if (rules.kinds() != null) { // built-in rules only need the scanner
+            new InlineScanner(rules.kinds(), line).scan(listener); // scan the line once without any regex
+        } else {
+            TreeBuilder.replayChildren(parseInline(line, rules, context), 0, listener); // the rule parsers build elements
+        }
+        if (context.metrics != null) context.metrics.enter(stage);
+        if (item) listener.endListItem(); else listener.endParagraph();
+    }
+
+    private HTMLElement parseInline(String line, InlineRules.Compiled rules, ParseContext context) {
+        HTMLElement text = new HTMLElement("p", (HTMLElement) null); // collects what the rule parsers add
         try {
+            Matcher inlineMatcher = matcher(rules.pattern(), line, context); // match the line with the cached inline pattern
+            int lastEnd = 0; // track the last match's end position
             while (inlineMatcher.find()) { // iterate through all inline matches
                 String group = inlineMatcher.group(0); // get the matched group
-                text.add(new HTMLElement(line.substring(lastEnd, inlineMatcher.start()))); // add the text before the bold match
-                boolean parsed = inlineParsers.stream().anyMatch(parser -> parser.apply(text, group));
+                text.add(new HTMLText(line.substring(lastEnd, inlineMatcher.start()))); // add the text before the bold match
+                boolean parsed = rules.parsers().stream().anyMatch(parser -> count(context) && parser.apply(text, group)); // every rule parser runs a matcher
                 if (parsed) {
                     lastEnd = inlineMatcher.end(); // update the last match's end position
                 }
             }
-            text.add(new HTMLElement(line.substring(lastEnd))); // add any remaining text after the last inline match
-            html.add(text); // add the paragraph or list item to the HTML tree
+            text.add(new HTMLText(line.substring(lastEnd))); // add any remaining text after the last inline match
         } catch (Exception e) {
             throw new RuntimeException(e); // handle exceptions
         }
+        return text;
     }
 
-    private boolean parseHeader(HTMLElement html, ListIterator<String> i) {
-        String text = i.next(); // get next line
-        Matcher hMatcher = hdrPattern.matcher(text); // initializes the header matcher for md line
+    private boolean parseHeader(BlockEmitter.Container html, ParseContext context) {
+        LineCursor lines = context.lines;
+        Matcher hMatcher = matcher(hdrPattern, lines, context); // initializes the header matcher for the current line
         if(hMatcher.find()) { // if given line is a header
-            try {
-                HTMLElement h = new HTMLElement("h" + hMatcher.group(1).length(), hMatcher.group(2)); // initializes header html element
-                html.add(h); // add header in to html tree
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
+            MDListener listener = context.events.at(html);
+            int level = hMatcher.group(1).length(); // the indentation counts too
+            listener.startHeading(level);
+            listener.text(hMatcher.group(2));
+            listener.endHeading(level);
+            lines.advance(); // the header is done, go to the next line
             return true; // return true to markdownParser() function back
         }
-        i.previous(); // if no header with # found then go to previous line
-        return false;
+        return false; // if no header with # found then stay on the current line
+    }
+
+    private static Matcher matcher(Pattern pattern, CharSequence input, ParseContext context) {
+        count(context);
+        return pattern.matcher(input);
+    }
+
+    private static boolean count(ParseContext context) { // one more regex matcher use, always true to fit into conditions
+        if (context.metrics != null) context.metrics.matchers++;
+        return true;
     }
 }
@@ -1,43 +1,123 @@
 package org.toex;
 
 import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Main {
     public static void main(String[] args) {
-        String testMarkdown = "";
+        List<String> arguments = new ArrayList<>(List.of(args));
+        boolean metrics = arguments.remove("--metrics"); // percentiles per file after the run, or on /metrics of the server
+        if (!arguments.isEmpty() && arguments.get(0).equals("--serve")) { // Main --serve [port] [max concurrent requests] [max body bytes] [--metrics]
+            serve(arguments, metrics);
+            return;
+        }
+        if (arguments.size() == 2 || arguments.size() == 3) { // Main <input directory> <output directory> [workers] [--metrics]
+            batch(arguments, metrics);
+            return;
+        }
+        if (!arguments.isEmpty() || metrics) {
+            usage();
+            return;
+        }
+        Path path = Paths.get("markdown.md");
+        Path target = Paths.get("test.html");
+        MDParser parser = new MDParser();
         try {
-            Path path = Paths.get("markdown.md");
-            testMarkdown = Files.readString(path); // Reads the entire file content as a String
-        } catch (Exception e) {
+            Path temp = target.resolveSibling(target.getFileName() + ".tmp"); // test.html only changes if everything is written
+            try {
+                try (BufferedWriter writer = Files.newBufferedWriter(temp)) {
+                    parser.writeDocument(path, writer); // the file is memory-mapped and parsed while the document is written
+                }
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            System.out.println("An error occurred.");
             e.printStackTrace();
         }
+    }
 
-        MDParser parser = new MDParser();
-        HTMLElement html = parser.compile(testMarkdown);
-        String content = html.createDocument();
-        String filePath = "test.html";
-
+    private static void serve(List<String> args, boolean withMetrics) {
+        int port = args.size() > 1 ? port(args.get(1)) : 8080;
+        int concurrent = args.size() > 2 ? count(args.get(2)) : Runtime.getRuntime().availableProcessors() * 4;
+        int maxBody = args.size() > 3 ? count(args.get(3)) : 4 << 20;
+        if (args.size() > 4 || port < 0 || concurrent < 1 || maxBody < 1) {
+            usage();
+            return;
+        }
+        ConvertServer server = server(concurrent, maxBody, withMetrics);
         try {
-            File file = new File(filePath);
+            port = server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), port)); // local requests only
+            System.out.printf("Listening on http://localhost:%d/convert and /document%s%n", port, withMetrics ? ", metrics on /metrics" : "");
+        } catch (IOException e) {
+            System.out.println("An error occurred.");
+            e.printStackTrace();
+        }
+    }
 
-            // Check if the file exists
-            if (!file.exists()) {
-                // Create a new file if it doesn't exist
-                file.createNewFile();
+    static ConvertServer server(int concurrent, int maxBody, boolean withMetrics) { // the server of --serve, ServerLoad measures the same one
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) { // the chunks of a streamed answer would wait for the delayed ACK of the client, about 40 ms each time
+            System.setProperty("sun.net.httpserver.nodelay", "true"); // read when the first HttpServer is created
+        }
+        return new ConvertServer(new MDParser().setMetrics(withMetrics ? new MDMetrics() : null), concurrent, maxBody);
+    }
+
+    private static void batch(List<String> args, boolean withMetrics) {
+        Path input = Paths.get(args.get(0));
+        Path output = Paths.get(args.get(1));
+        int workers = args.size() > 2 ? count(args.get(2)) : Runtime.getRuntime().availableProcessors();
+        if (workers < 1) {
+            usage();
+            return;
+        }
+        MDMetrics metrics = withMetrics ? new MDMetrics() : null;
+        BatchConverter converter = new BatchConverter(new MDParser().setMetrics(metrics), workers); // one parser shared by all workers
+        try {
+            BatchConverter.Result result = converter.convert(input, output);
+            for (BatchConverter.Failure failure : result.failures()) {
+                System.err.println("Failed: " + failure.file() + ": " + failure.error());
             }
-            // Write to the file (overwriting the existing content)
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
-                writer.write(content);
+            System.out.printf("Converted %d files (%d failed) in %.2f s: %.1f files/s, %.1f KB/s%n",
+                    result.files(), result.failures().size(), result.nanos() / 1e9,
+                    result.filesPerSecond(), result.bytesPerSecond() / 1024);
+            if (metrics != null) {
+                System.out.print(metrics.summary());
             }
-        } catch (IOException e) {
+        } catch (IOException | InterruptedException e) {
             System.out.println("An error occurred.");
             e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+
+    private static int count(String value) { // a positive number, or 0 if value is none
+        try {
+            return Math.max(Integer.parseInt(value), 0);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static int port(String value) { // 0 to 65535, 0 chooses a free port, or -1 if value is none
+        try {
+            int port = Integer.parseInt(value);
+            return port <= 0xFFFF ? Math.max(port, -1) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: Main [<input directory> <output directory> [workers] [--metrics]]");
+        System.err.println("       Main --serve [port] [max concurrent requests] [max body bytes] [--metrics]");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,73 @@
+package org.toex;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+class MappedText implements Closeable { // a memory-mapped UTF-8 file, decoded one window of characters at a time
+
+    private static final long MAPPING = 1L << 28; // bytes mapped at once, a mapping can't be larger than 2 GB
+
+    private final FileChannel channel;
+    private final long size;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT) // like Files.readString
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+    private final CharBuffer window;
+    private ByteBuffer mapped; // the mapped part of the file that is decoded now
+    private long mappedStart; // file offset of mapped
+    private boolean flushed; // the end of the file was decoded
+
+    MappedText(Path file, int windowChars) throws IOException {
+        if (windowChars < 2) { // a supplementary character never fits into one char, the window would stay empty
+            throw new IllegalArgumentException("Das Fenster muss mindestens zwei Zeichen fassen.");
+        }
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        size = channel.size();
+        window = CharBuffer.allocate(windowChars);
+        mapped = ByteBuffer.allocate(0);
+    }
+
+    CharBuffer next() throws IOException { // the next decoded characters, null at the end of the file, only valid until the next call
+        window.clear();
+        while (window.hasRemaining() && !flushed) {
+            if (!mapped.hasRemaining() || (mapped.remaining() < 4 && mappedStart + mapped.limit() < size)) {
+                remap(); // also keeps a character that is split between two mappings together
+            }
+            boolean end = mappedStart + mapped.limit() >= size;
+            CoderResult result = decoder.decode(mapped, window, end);
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (end && result.isUnderflow()) {
+                if (decoder.flush(window).isOverflow()) {
+                    break;
+                }
+                flushed = true;
+            } else if (result.isOverflow()) {
+                break;
+            }
+        }
+        window.flip();
+        return window.hasRemaining() ? window : null;
+    }
+
+    private void remap() throws IOException {
+        long position = mappedStart + mapped.position(); // the first byte that was not decoded yet
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAPPING, size - position));
+        mappedStart = position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
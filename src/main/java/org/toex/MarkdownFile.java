@@ -0,0 +1,76 @@
+package org.toex;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+class MarkdownFile { // a file that is parsed part by part while it is written, the heap holds only the largest part
+
+    private static final int WINDOW = 1 << 16; // characters decoded at once
+
+    private final MDParser parser;
+    private final Path file;
+    private final StreamPrecompiler precompiler;
+
+    MarkdownFile(MDParser parser, Path file) {
+        this(parser, file, WINDOW);
+    }
+
+    MarkdownFile(MDParser parser, Path file, int windowChars) {
+        this.parser = parser;
+        this.file = file;
+        this.precompiler = new StreamPrecompiler(parser.lineMerger(), windowChars);
+    }
+
+    void writeDocument(Appendable out) throws IOException { // like HTMLElement.writeDocument for the tree of the whole file
+        long[] regions = precompiler.codeRegions(file); // reads the file once before anything is written, a missing file leaves out as it is
+        MDMetrics metrics = parser.getMetrics();
+        MDMetrics.Document document = metrics != null ? metrics.start(Files.size(file)) : null;
+        new HTMLElement() { // the root div, only its content comes from the file
+            @Override
+            void writeContent(Appendable out, int indent, boolean inline) throws IOException {
+                parts(regions, document, part -> parser.parse(part.toString(), document).writeContent(out, indent, false));
+            }
+        }.writeDocument(out, metrics);
+        if (metrics != null) metrics.record(document);
+    }
+
+    void parse(MDListener listener) throws IOException { // the events of the whole file, part by part
+        long[] regions = precompiler.codeRegions(file);
+        MDMetrics metrics = parser.getMetrics();
+        if (metrics == null) {
+            parts(regions, null, part -> parser.parse(part.toString(), listener));
+            return;
+        }
+        MDMetrics.Document document = metrics.start(Files.size(file));
+        MDListener counter = new MDMetrics.NodeCounter(listener, document);
+        parts(regions, document, part -> parser.parse(part.toString(), counter, document));
+        metrics.record(document);
+    }
+
+    private void parts(long[] regions, MDMetrics.Document document, StreamPrecompiler.Sink action) throws IOException { // precompiled parts that parse on their own
+        int previous = document != null ? document.enter(MDMetrics.Document.PRECOMPILE) : 0; // the parts switch to the other stages themselves
+        MDParser.Splitter splitter = parser.new Splitter();
+        StringBuilder part = new StringBuilder(); // precompiled text of the current part
+        int[] scanned = {0}; // part is split into lines up to here
+        precompiler.precompile(file, regions, precompiled -> {
+            part.append(precompiled);
+            for (int nl = part.indexOf("\n", scanned[0]); nl >= 0; nl = part.indexOf("\n", scanned[0])) {
+                int lineStart = scanned[0];
+                scanned[0] = nl + 1;
+                if (splitter.startsPart(part.substring(lineStart, nl)) && lineStart > 0) {
+                    action.accept(part.substring(0, lineStart - 1)); // the part is complete, nothing after it changes it
+                    part.delete(0, lineStart);
+                    scanned[0] = nl + 1 - lineStart;
+                }
+            }
+        });
+        int lineStart = scanned[0];
+        if (lineStart < part.length() && lineStart > 0 && splitter.startsPart(part.substring(lineStart))) { // the last line has no line break
+            action.accept(part.substring(0, lineStart - 1));
+            part.delete(0, lineStart);
+        }
+        action.accept(part.toString());
+        if (document != null) document.enter(previous);
+    }
+}
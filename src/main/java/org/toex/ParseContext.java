@@ -0,0 +1,22 @@
+package org.toex;
+
+class ParseContext { // state of one compile call or one quote in it, so one MDParser can parse several documents at once
+
+    final LineCursor lines; // lines of the precompiled document
+    final BlockEmitter events; // where the parsed blocks go
+    final MDMetrics.Document metrics; // counters of the document, null unless the parser has metrics
+    final MDListener quote; // gets the end of the quote whose content this is, null for a document
+    int inList = 0; // Tracks the current depth of list nesting
+    ParseContext quoted; // content of the quote the last block started, parsed before the next block
+
+    ParseContext(LineCursor lines, BlockEmitter events) {
+        this(lines, events, null, null);
+    }
+
+    ParseContext(LineCursor lines, BlockEmitter events, MDMetrics.Document metrics, MDListener quote) {
+        this.lines = lines;
+        this.events = events;
+        this.metrics = metrics;
+        this.quote = quote;
+    }
+}
@@ -0,0 +1,219 @@
+package org.toex;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+public class RenderCache { // reuses the rendered HTML of blocks that did not change since the last run
+
+    private static final int FRAGMENT_INDENT = 4; // children of the root div in HTMLElement.toString
+    private static final int DOCUMENT_INDENT = 12; // children of the root div in HTMLElement.createDocument
+
+    private final Path directory; // null if the cache lives in memory only
+    private final long maxChars; // upper bound for the size of all cached blocks
+    private final LinkedHashMap<String, String> memory = new LinkedHashMap<>(16, 0.75f, true); // least recently used first
+    private final LinkedHashMap<String, Long> files = new LinkedHashMap<>(16, 0.75f, true); // sizes of the cached files
+    private long size; // characters in memory or bytes on disk
+    private long clock; // the last modification time given to a file
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private RenderCache(Path directory, long maxChars) {
+        if (maxChars < 0) {
+            throw new IllegalArgumentException("Die Größe des Caches darf nicht negativ sein.");
+        }
+        this.directory = directory;
+        this.maxChars = maxChars;
+    }
+
+    public static RenderCache inMemory(long maxChars) {
+        return new RenderCache(null, maxChars);
+    }
+
+    public static RenderCache onDisk(Path directory, long maxBytes) throws IOException {
+        RenderCache cache = new RenderCache(directory, maxBytes);
+        Files.createDirectories(directory);
+        List<Path> existing;
+        try (Stream<Path> list = Files.list(directory)) { // blocks of earlier runs, the oldest first
+            existing = list.filter(p -> p.getFileName().toString().endsWith(".html"))
+                    .sorted(Comparator.comparing(RenderCache::lastModified)).toList();
+        }
+        for (Path file : existing) {
+            String name = file.getFileName().toString();
+            long bytes = Files.size(file);
+            cache.files.put(name.substring(0, name.length() - 5), bytes);
+            cache.size += bytes;
+            cache.clock = lastModified(file).toMillis();
+        }
+        List<String> dropped;
+        synchronized (cache) {
+            dropped = cache.evict();
+        }
+        cache.delete(dropped);
+        return cache;
+    }
+
+    public String render(MDParser parser, String md) { // the same as parser.compile(md).toString()
+        return assemble(parser, md, FRAGMENT_INDENT).toString();
+    }
+
+    public String renderDocument(MDParser parser, String md) { // the same as parser.compile(md).createDocument()
+        return assemble(parser, md, DOCUMENT_INDENT).createDocument();
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    private HTMLElement assemble(MDParser parser, String md, int indent) {
+        HTMLElement html = new HTMLElement();
+        String signature = parser.signature();
+        for (String block : parser.splitBlocks(parser.precompile(md))) {
+            String key = key(indent, signature, block);
+            String rendered = get(key);
+            if (rendered == null) {
+                misses.incrementAndGet();
+                StringBuilder sb = new StringBuilder();
+                try {
+                    parser.parse(block).writeChildren(sb, indent);
+                } catch (IOException e) {
+                    throw new RuntimeException(e); // a StringBuilder never throws
+                }
+                rendered = sb.substring(Math.min(indent, sb.length())); // the root div writes the first indentation itself
+                put(key, rendered);
+            } else {
+                hits.incrementAndGet();
+            }
+            if (!rendered.isEmpty()) {
+                html.children().add(new HTMLText(rendered)); // written as text, one line per element of the block
+            }
+        }
+        return html;
+    }
+
+    private String get(String key) {
+        long stamp;
+        synchronized (this) { // only the index under the lock, the file is read outside of it
+            if (directory == null) {
+                return memory.get(key);
+            }
+            if (files.get(key) == null) {
+                return null;
+            }
+            stamp = tick();
+        }
+        Path file = directory.resolve(key + ".html");
+        try {
+            String rendered = Files.readString(file);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(stamp)); // keeps the order for the next run
+            return rendered;
+        } catch (IOException e) {
+            forget(key); // removed by someone else, render it again
+            return null;
+        }
+    }
+
+    private void put(String key, String rendered) {
+        if (directory == null) {
+            synchronized (this) {
+                String old = memory.put(key, rendered);
+                size += rendered.length() - (old != null ? old.length() : 0);
+                evict();
+            }
+            return;
+        }
+        byte[] bytes = rendered.getBytes(StandardCharsets.UTF_8);
+        try {
+            Path temp = Files.createTempFile(directory, key, ".tmp");
+            Files.write(temp, bytes);
+            Files.setLastModifiedTime(temp, FileTime.fromMillis(tick()));
+            Files.move(temp, directory.resolve(key + ".html"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        List<String> dropped;
+        synchronized (this) {
+            Long old = files.put(key, (long) bytes.length);
+            size += bytes.length - (old != null ? old : 0);
+            dropped = evict();
+        }
+        delete(dropped);
+    }
+
+    private synchronized void forget(String key) {
+        Long bytes = files.remove(key);
+        if (bytes != null) {
+            size -= bytes;
+        }
+    }
+
+    private synchronized long tick() { // strictly increasing, so the files keep the order of their uses
+        clock = Math.max(System.currentTimeMillis(), clock + 1);
+        return clock;
+    }
+
+    private List<String> evict() { // drop the least recently used blocks until the cache fits, returns the files to delete
+        List<String> dropped = new ArrayList<>();
+        Iterator<? extends Map.Entry<String, ?>> i = directory == null ? memory.entrySet().iterator() : files.entrySet().iterator();
+        while (size > maxChars && i.hasNext()) {
+            Map.Entry<String, ?> entry = i.next();
+            if (directory == null) {
+                size -= ((String) entry.getValue()).length();
+            } else {
+                size -= (Long) entry.getValue();
+                dropped.add(entry.getKey());
+            }
+            i.remove();
+            evictions.incrementAndGet();
+        }
+        return dropped;
+    }
+
+    private void delete(List<String> dropped) { // outside the lock
+        try {
+            for (String key : dropped) {
+                Files.deleteIfExists(directory.resolve(key + ".html"));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String key(int indent, String signature, String block) { // content hash of everything the output depends on
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((indent + "\n" + signature + "\n").getBytes(StandardCharsets.UTF_8));
+            digest.update(block.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.toex;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+class StreamPrecompiler { // MDParser.precompile for files that don't fit into memory, the text is passed on piece by piece
+
+    interface Sink {
+        void accept(CharSequence precompiled) throws IOException;
+    }
+
+    private final LineMerger lineMerger;
+    private final int windowChars; // characters decoded at once
+
+    StreamPrecompiler(LineMerger lineMerger, int windowChars) {
+        this.lineMerger = lineMerger;
+        this.windowChars = windowChars;
+    }
+
+    void precompile(Path file, Sink sink) throws IOException {
+        precompile(file, codeRegions(file), sink);
+    }
+
+    void precompile(Path file, long[] regions, Sink sink) throws IOException { // regions are the start and end of every code block, these are not merged
+        StringBuilder pending = new StringBuilder(); // text since the last flush that is not merged yet
+        int scanned = 0; // pending is searched for safe points up to here
+        int lastSafe = 0; // last position in pending the merge can be split at
+        int region = 0;
+        long position = 0; // file position of the next character, in characters
+        try (MappedText text = new MappedText(file, windowChars)) {
+            for (CharBuffer window = text.next(); window != null; window = text.next()) {
+                while (window.hasRemaining()) {
+                    long regionStart = region < regions.length ? regions[region] : Long.MAX_VALUE;
+                    if (position >= regionStart) { // inside a code block, copy it as it is
+                        int n = (int) Math.min(window.remaining(), regions[region + 1] - position);
+                        sink.accept(window.subSequence(0, n));
+                        window.position(window.position() + n);
+                        position += n;
+                        if (position == regions[region + 1]) {
+                            region += 2;
+                        }
+                        continue;
+                    }
+                    int n = (int) Math.min(window.remaining(), regionStart - position);
+                    pending.append(window, 0, n);
+                    window.position(window.position() + n);
+                    position += n;
+                    if (position == regionStart) { // the text before the code block is complete
+                        sink.accept(lineMerger.merge(pending, 0, pending.length(), new StringBuilder()));
+                        pending.setLength(0);
+                        scanned = lastSafe = 0;
+                        continue;
+                    }
+                    for (int nl = indexOf(pending, '\n', scanned); nl >= 0; nl = indexOf(pending, '\n', scanned)) {
+                        int lineStart = previousLineEnd(pending, nl) + 1;
+                        if (isSafe(pending, lineStart)) {
+                            lastSafe = lineStart;
+                        }
+                        scanned = nl + 1;
+                    }
+                    if (lastSafe > 0) { // merge everything before the safe point now, so pending stays small
+                        sink.accept(lineMerger.merge(pending, 0, lastSafe, new StringBuilder()));
+                        pending.delete(0, lastSafe);
+                        scanned -= lastSafe;
+                        lastSafe = 0;
+                    }
+                }
+            }
+        }
+        sink.accept(lineMerger.merge(pending, 0, pending.length(), new StringBuilder()));
+    }
+
+    private boolean isSafe(CharSequence md, int m) { // merging the text before and after m on its own gives the same result
+        if (m < 2 || md.charAt(m - 1) != '\n') return false;
+        char before = md.charAt(m - 2); // so no whitespace run of a line before m reaches into the line at m
+        if (LineMerger.isWhitespace(before) || LineMerger.isLineTerminator(before)) return false;
+        if (LineMerger.isWhitespace(md.charAt(m))) return false;
+        LineMerger.LineKind kind = lineMerger.classify(md, m, md.length(), new int[]{-1, -1});
+        return kind != LineMerger.LineKind.TEXT && kind != LineMerger.LineKind.BLANK; // the line before is not merged into it
+    }
+
+    private static int previousLineEnd(CharSequence md, int nl) {
+        int c = nl - 1;
+        while (c >= 0 && md.charAt(c) != '\n') c--;
+        return c;
+    }
+
+    private static int indexOf(CharSequence md, char ch, int from) {
+        for (int c = from; c < md.length(); c++) {
+            if (md.charAt(c) == ch) return c;
+        }
+        return -1;
+    }
+
+    long[] codeRegions(Path file) throws IOException { // what MDParser.precompile keeps as it is, without the whole text in memory
+        long[] regions = new long[16];
+        int count = 0;
+        FenceScanner fences = new FenceScanner();
+        try (MappedText text = new MappedText(file, windowChars)) {
+            for (CharBuffer window = text.next(); window != null; window = text.next()) {
+                for (int i = window.position(); i < window.limit(); i++) {
+                    if (fences.accept(window.get(i))) {
+                        if (count == regions.length) regions = Arrays.copyOf(regions, count * 2);
+                        regions[count++] = fences.openerStart;
+                        regions[count++] = fences.end;
+                    }
+                }
+            }
+        }
+        if (fences.finish()) { // the closing fence is the last line
+            if (count == regions.length) regions = Arrays.copyOf(regions, count * 2);
+            regions[count++] = fences.openerStart;
+            regions[count++] = fences.end;
+        }
+        return Arrays.copyOf(regions, count);
+    }
+}
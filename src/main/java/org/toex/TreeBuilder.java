@@ -0,0 +1,222 @@
+package org.toex;
+
+class TreeBuilder implements MDListener { // builds the tree MDParser.compile returns from the events
+
+    private final HTMLElement root;
+    HTMLElement current; // element the next event adds to
+
+    TreeBuilder() {
+        this(new HTMLElement());
+    }
+
+    TreeBuilder(HTMLElement root) {
+        this.root = root;
+        this.current = root;
+    }
+
+    HTMLElement getRoot() {
+        return root;
+    }
+
+    @Override
+    public void startHeading(int level) {
+        start("h" + level);
+    }
+
+    @Override
+    public void endHeading(int level) {
+        end();
+    }
+
+    @Override
+    public void startParagraph() {
+        start("p");
+    }
+
+    @Override
+    public void endParagraph() {
+        end();
+    }
+
+    @Override
+    public void startListItem() {
+        start("li");
+    }
+
+    @Override
+    public void endListItem() {
+        end();
+    }
+
+    @Override
+    public void startList(boolean ordered) {
+        start(ordered ? "ol" : "ul");
+    }
+
+    @Override
+    public void endList(boolean ordered) {
+        end();
+    }
+
+    @Override
+    public void startQuote() {
+        start("blockquote");
+    }
+
+    @Override
+    public void endQuote() {
+        end();
+    }
+
+    @Override
+    public void codeBlock(String info, String code) {
+        HTMLElement pre = new HTMLElement("pre", code);
+        pre.addKey("class", info);
+        add(pre);
+    }
+
+    @Override
+    public void text(CharSequence text) {
+        add(new HTMLText(text.toString()));
+    }
+
+    @Override
+    public void code(CharSequence code) {
+        add(InlineScanner.code(code.toString()));
+    }
+
+    @Override
+    public void startEmphasis() {
+        start("em");
+    }
+
+    @Override
+    public void endEmphasis() {
+        end();
+    }
+
+    @Override
+    public void startStrong() {
+        start("strong");
+    }
+
+    @Override
+    public void endStrong() {
+        end();
+    }
+
+    @Override
+    public void startStrikethrough() {
+        start("s");
+    }
+
+    @Override
+    public void endStrikethrough() {
+        end();
+    }
+
+    @Override
+    public void startLink(String href) {
+        start("a");
+        current.addKey("href", href);
+    }
+
+    @Override
+    public void endLink() {
+        end();
+    }
+
+    @Override
+    public void image(String src, String alt) {
+        add(InlineScanner.image(alt, src));
+    }
+
+    @Override
+    public void element(HTMLElement element) {
+        add(element);
+    }
+
+    private void start(String tag) {
+        HTMLElement element = new HTMLElement(tag, (HTMLElement) null);
+        add(element);
+        current = element;
+    }
+
+    private void end() {
+        current = current.getParent();
+    }
+
+    private void add(HTMLNode element) {
+        try {
+            current.add(element);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static void replayChildren(HTMLElement html, int from, MDListener listener) { // the events that build the children again
+        for (int c = from; c < html.childCount(); c++) {
+            replay(html.children.get(c), listener);
+        }
+    }
+
+    static void replay(HTMLNode node, MDListener listener) { // elements the parser doesn't build are passed on as they are
+        if (!(node instanceof HTMLElement html)) {
+            listener.text(((HTMLText) node).data);
+            return;
+        }
+        if (html.tag == null) { // text of the old constructor
+            replayChildren(html, 0, listener);
+            return;
+        }
+        String name = html.tag.getName();
+        if (html.keyCount() > 0) {
+            if (name.equals("pre") && hasKeys(html, "class") && isText(html)) {
+                listener.codeBlock(html.getKey("class"), ((HTMLText) html.children.get(0)).data);
+            } else if (name.equals("a") && hasKeys(html, "href")) {
+                listener.startLink(html.getKey("href"));
+                replayChildren(html, 0, listener);
+                listener.endLink();
+            } else if (name.equals("img") && hasKeys(html, "src", "alt") && html.childCount() == 0) {
+                listener.image(html.getKey("src"), html.getKey("alt"));
+            } else {
+                listener.element(html);
+            }
+            return;
+        }
+        switch (name) {
+            case "p" -> { listener.startParagraph(); replayChildren(html, 0, listener); listener.endParagraph(); }
+            case "li" -> { listener.startListItem(); replayChildren(html, 0, listener); listener.endListItem(); }
+            case "ol", "ul" -> { listener.startList(name.equals("ol")); replayChildren(html, 0, listener); listener.endList(name.equals("ol")); }
+            case "blockquote" -> { listener.startQuote(); replayChildren(html, 0, listener); listener.endQuote(); }
+            case "em" -> { listener.startEmphasis(); replayChildren(html, 0, listener); listener.endEmphasis(); }
+            case "strong" -> { listener.startStrong(); replayChildren(html, 0, listener); listener.endStrong(); }
+            case "s" -> { listener.startStrikethrough(); replayChildren(html, 0, listener); listener.endStrikethrough(); }
+            case "code" -> {
+                if (isText(html)) listener.code(((HTMLText) html.children.get(0)).data);
+                else listener.element(html);
+            }
+            default -> {
+                if (name.length() == 2 && name.charAt(0) == 'h' && name.charAt(1) >= '1' && name.charAt(1) <= '9') {
+                    listener.startHeading(name.charAt(1) - '0');
+                    replayChildren(html, 0, listener);
+                    listener.endHeading(name.charAt(1) - '0');
+                } else {
+                    listener.element(html);
+                }
+            }
+        }
+    }
+
+    private static boolean hasKeys(HTMLElement html, String... keys) {
+        if (html.keyCount() != keys.length) return false;
+        for (String key : keys) {
+            if (html.getKey(key) == null) return false;
+        }
+        return true;
+    }
+
+    private static boolean isText(HTMLElement html) { // exactly one text child
+        return html.childCount() == 1 && html.children.get(0) instanceof HTMLText;
+    }
+}
@@ -0,0 +1,73 @@
+package org.toex;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.MalformedInputException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+class BatchConverterTest {
+
+    private static final String MARKDOWN = "# Title\n\n- item\n  - nested\n\n> quote\n\n```\ncode\n```\n";
+
+    @Test
+    void mirrorsTheTree(@TempDir Path in, @TempDir Path out) throws Exception {
+        Files.createDirectories(in.resolve("sub"));
+        Files.writeString(in.resolve("a.md"), MARKDOWN);
+        Files.writeString(in.resolve("sub/b.markdown"), MARKDOWN.repeat(3));
+        Files.writeString(in.resolve("c.txt"), "not Markdown");
+        MDParser parser = new MDParser();
+        BatchConverter.Result result = new BatchConverter(parser, 2).convert(in, out);
+        assertEquals(2, result.files());
+        assertEquals(List.of(), result.failures());
+        assertEquals(parser.compile(MARKDOWN).createDocument(), Files.readString(out.resolve("a.html")));
+        assertEquals(parser.compile(MARKDOWN.repeat(3)).createDocument(), Files.readString(out.resolve("sub/b.html")));
+        assertEquals(List.of(out.resolve("a.html"), out.resolve("sub/b.html")), files(out));
+    }
+
+    @Test
+    void everyFailureIsCountedAndLeavesTheTarget(@TempDir Path in, @TempDir Path out) throws Exception {
+        Files.writeString(in.resolve("good.md"), MARKDOWN);
+        Files.write(in.resolve("invalid.md"), new byte[]{'#', ' ', (byte) 0xC3, (byte) 0x28}); // not UTF-8
+        Files.writeString(in.resolve("deep.md"), MARKDOWN.repeat(1000) + "a %% b\n");
+        Files.writeString(out.resolve("deep.html"), "old");
+        MDParser parser = new MDParser().addInlineRule("fails", Pattern.compile("%%"), (html, text) -> {
+            html.children().add(new HTMLElement("span", text) { // fails after a part of the document is written
+                @Override
+                void write(Appendable out, int indent) {
+                    throw new StackOverflowError(); // like a document too deep for the stack
+                }
+            });
+            return true;
+        });
+        BatchConverter.Result result = new BatchConverter(parser, 2).convert(in, out);
+        assertEquals(1, result.files());
+        assertEquals(2, result.failures().size());
+        for (BatchConverter.Failure failure : result.failures()) {
+            if (failure.file().endsWith("deep.md")) {
+                assertInstanceOf(StackOverflowError.class, failure.error());
+            } else {
+                assertEquals(in.resolve("invalid.md"), failure.file());
+                assertInstanceOf(MalformedInputException.class, failure.error());
+            }
+        }
+        assertEquals("old", Files.readString(out.resolve("deep.html"))); // written to a temp file that is moved only when complete
+        assertFalse(Files.exists(out.resolve("invalid.html")));
+        assertEquals(List.of(out.resolve("deep.html"), out.resolve("good.html")), files(out)); // no temp file is left
+    }
+
+    private static List<Path> files(Path dir) throws IOException {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            return walk.filter(Files::isRegularFile).sorted().toList();
+        }
+    }
+}
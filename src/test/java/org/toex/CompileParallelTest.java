@@ -0,0 +1,52 @@
+package org.toex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompileParallelTest {
+
+    private static final String[] FLAT = Arrays.stream(TestDocuments.LINES) // a nested list puts the rest of the document into one part
+            .filter(line -> !line.startsWith("  ")).toArray(String[]::new);
+
+    @Test
+    void partsStitchToTheSequentialTree() {
+        Random random = new Random(19);
+        MDParser parser = new MDParser();
+        try (ForkJoinPool pool = new ForkJoinPool(4)) {
+            for (int d = 0; d < 20; d++) {
+                String md = document(random);
+                assertTrue(parser.splitBlocks(parser.precompile(md)).size() > 100, "the document is split into many parts");
+                assertEquals(parser.compile(md).toString(), parser.compileParallel(md, pool).toString(), "document " + d);
+            }
+        }
+    }
+
+    @Test
+    void partsAddUpTheMetrics() {
+        MDMetrics metrics = new MDMetrics();
+        MDParser parser = new MDParser().setMetrics(metrics);
+        String md = document(new Random(190));
+        parser.compile(md);
+        long lines = metrics.total(MDMetrics.Metric.LINES), nodes = metrics.total(MDMetrics.Metric.NODES);
+        try (ForkJoinPool pool = new ForkJoinPool(4)) {
+            parser.compileParallel(md, pool);
+        }
+        assertEquals(2, metrics.count(MDMetrics.Metric.LINES)); // one document, however many tasks parsed it
+        assertEquals(2 * lines, metrics.total(MDMetrics.Metric.LINES));
+        assertEquals(2 * nodes, metrics.total(MDMetrics.Metric.NODES));
+    }
+
+    private static String document(Random random) { // over 100 KB of lists, quotes and code, nested lists only at the end
+        StringBuilder md = new StringBuilder();
+        while (md.length() < 120_000) {
+            md.append(FLAT[random.nextInt(FLAT.length)]).append('\n');
+        }
+        return md.append(TestDocuments.random(random, 200)).toString();
+    }
+}
@@ -0,0 +1,59 @@
+package org.toex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ConcurrencyTest { // one parser shared by several threads gives every thread the sequential result
+
+    @Test
+    void sharedParserWhileRulesChange() throws Exception {
+        Random random = new Random(8);
+        List<String> documents = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int d = 0; d < 200; d++) {
+            String md = TestDocuments.random(random, 60);
+            documents.add(md);
+            expected.add(new MDParser().compile(md).toString());
+        }
+
+        MDParser shared = new MDParser();
+        AtomicBoolean running = new AtomicBoolean(true);
+        try (ExecutorService executor = Executors.newFixedThreadPool(9)) {
+            Future<?> rules = executor.submit(() -> { // the documents have no %, but the parser switches between scanner and patterns
+                while (running.get()) {
+                    shared.addInlineRule("percent", Pattern.compile("%%(.*?)%%"), (html, text) -> false);
+                    shared.removeInlineRule("percent");
+                }
+            });
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int seed = t;
+                workers.add(executor.submit(() -> {
+                    Random order = new Random(seed);
+                    for (int i = 0; i < 500; i++) {
+                        int d = order.nextInt(documents.size());
+                        assertEquals(expected.get(d), shared.compile(documents.get(d)).toString(), documents.get(d));
+                    }
+                }));
+            }
+            try {
+                for (Future<?> worker : workers) {
+                    worker.get(); // rethrows a failed comparison
+                }
+            } finally {
+                running.set(false);
+            }
+            rules.get();
+        }
+    }
+}
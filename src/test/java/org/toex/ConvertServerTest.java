@@ -0,0 +1,88 @@
+package org.toex;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ConvertServerTest {
+
+    private ConvertServer server;
+
+    @AfterEach
+    void stop() {
+        server.stop(0);
+    }
+
+    @Test
+    void convertsTheFragment() throws Exception {
+        MDParser parser = new MDParser();
+        assertEquals(200, post(parser, "# Title").statusCode());
+        assertEquals(parser.compile("# Title").toString(), post(parser, "# Title").body());
+    }
+
+    @Test
+    void failedParseIsAnError() throws Exception {
+        MDParser parser = new MDParser().addInlineRule("fails", Pattern.compile("%%"), (html, text) -> {
+            throw new IllegalStateException(text);
+        });
+        assertEquals(500, post(parser, "a %% b").statusCode());
+    }
+
+    @Test
+    void failedRenderCutsTheAnswerOff() { // the status went out already, the client must not get a complete 200
+        MDParser parser = failingRender(new IllegalStateException("%%"));
+        assertThrows(IOException.class, () -> post(parser, "a".repeat(100_000) + "\n\nb %% c"));
+    }
+
+    @Test
+    void errorWhileRenderingCutsTheAnswerOff() {
+        MDParser parser = failingRender(new StackOverflowError());
+        assertThrows(IOException.class, () -> post(parser, "a".repeat(100_000) + "\n\nb %% c"));
+    }
+
+    @Test
+    void errorWhileParsingIsAnError() throws Exception {
+        MDParser parser = new MDParser().addInlineRule("fails", Pattern.compile("%%"), (html, text) -> {
+            throw new StackOverflowError();
+        });
+        assertEquals(500, post(parser, "a %% b").statusCode());
+    }
+
+    private static MDParser failingRender(Throwable failure) { // %% becomes an element that throws when it is written
+        return new MDParser().addInlineRule("fails", Pattern.compile("%%"), (html, text) -> {
+            html.children().add(new HTMLElement("span", text) { // an element of the rule, passed on as it is
+                @Override
+                void write(Appendable out, int indent) {
+                    if (failure instanceof Error error) throw error;
+                    throw (RuntimeException) failure;
+                }
+            });
+            return true;
+        });
+    }
+
+    private HttpResponse<String> post(MDParser parser, String markdown) throws IOException, InterruptedException {
+        if (server == null) {
+            server = new ConvertServer(parser, 4, 1 << 20);
+        }
+        int port = server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        try (HttpClient client = HttpClient.newHttpClient()) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/convert"))
+                    .POST(HttpRequest.BodyPublishers.ofString(markdown)).build();
+            return client.send(request, HttpResponse.BodyHandlers.ofString());
+        } finally {
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.toex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class InlineScannerTest { // the scanner against the combined pattern it replaced
+
+    private static final List<String> CASES = List.of(
+            "***bold italic***", "***a**", "**a*", "*a**", "****a**", "*****a*****b", "** a **", "*\t*", "x * y * z",
+            "![alt](src)", "[text](href)", "[![alt](src)](href)", "![[x](y)", "!![a](b)", "[a]!(b)", "[a](b)(c)", "![a]](b)",
+            "`code`", "`a *b* c`", "*a `b* c`", "``", "`a``b`",
+            "~~s~~", "~~~s~~~", "~~a *b~~ c*", "~s~",
+            "*a\rb*", "`a b`", "[a\u0085b](c)", "~~a ~~", "*a\r*b*",
+            "plain text", "", " *x* ", "\\*not\\*");
+
+    private static final String[] PIECES = {"*", "**", "***", "~~", "`", "[", "]", "(", ")", "![", "!", "a", "b c", " ", "\r", " ", "x"};
+
+    @Test
+    void casesMatchThePatterns() {
+        for (String md : CASES) {
+            assertSame(md, List.of());
+        }
+    }
+
+    @Test
+    void removedRulesMatchThePatterns() {
+        List<String> names = List.of("code", "boldItalic", "strikethrough", "image", "link");
+        for (String name : names) {
+            for (String md : CASES) {
+                assertSame(md, List.of(name));
+            }
+        }
+        for (String md : CASES) {
+            assertSame(md, List.of("image", "code"));
+        }
+    }
+
+    @Test
+    void randomLinesMatchThePatterns() {
+        Random random = new Random(5);
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder md = new StringBuilder();
+            int pieces = 1 + random.nextInt(14);
+            for (int p = 0; p < pieces; p++) {
+                md.append(PIECES[random.nextInt(PIECES.length)]);
+            }
+            assertSame(md.toString(), random.nextInt(4) == 0 ? List.of(List.of("code", "boldItalic", "strikethrough", "image", "link")
+                    .get(random.nextInt(5))) : List.of());
+        }
+    }
+
+    private static void assertSame(String md, List<String> removed) {
+        MDParser scanner = new MDParser();
+        MDParser patterns = new MDParser().addInlineRule("never", Pattern.compile("(?!)"), (html, text) -> false); // an unknown rule turns the scanner off
+        for (String name : removed) {
+            scanner.removeInlineRule(name);
+            patterns.removeInlineRule(name);
+        }
+        assertEquals(patterns.compile(md).toString(), scanner.compile(md).toString(), () -> "without " + removed + ": " + md);
+    }
+}
@@ -0,0 +1,59 @@
+package org.toex;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LineMergerTest {
+
+    private static final String SECTION = """
+            # Heading
+
+            A paragraph that goes on
+            over several lines
+            which are all merged
+              into one line.
+
+
+
+            - an item
+            continued here
+            * another item
+
+            ```java
+            int x = 1;
+
+            ```
+            > a quote
+            text after it\r
+            """;
+
+    @Test
+    void mergesParagraphLines() {
+        String md = "a\nb\n\n\nc";
+        StringBuilder out = new LineMerger().merge(md, 0, md.length(), new StringBuilder());
+        assertEquals("a b\nc", out.toString());
+    }
+
+    @Test
+    void precompileTimeGrowsLinearly() { // 10 KB to 10 MB, a quadratic merge would be about 1000 times slower per character
+        MDParser parser = new MDParser();
+        String small = SECTION.repeat(10 * 1024 / SECTION.length() + 1);
+        String large = SECTION.repeat(10 * 1024 * 1024 / SECTION.length() + 1);
+        bestNanosPerChar(parser, small, 200); // warm up
+        double smallNanos = bestNanosPerChar(parser, small, 200);
+        double largeNanos = bestNanosPerChar(parser, large, 3);
+        assertTrue(largeNanos < smallNanos * 20, "10 MB took " + largeNanos + " ns per character, 10 KB " + smallNanos);
+    }
+
+    private static double bestNanosPerChar(MDParser parser, String md, int runs) {
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < runs; r++) {
+            long start = System.nanoTime();
+            parser.precompile(md);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return (double) best / md.length();
+    }
+}
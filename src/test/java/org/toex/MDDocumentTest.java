@@ -0,0 +1,30 @@
+package org.toex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MDDocumentTest {
+
+    @Test
+    void randomEditsMatchACompleteParse() {
+        Random random = new Random(10);
+        MDParser parser = new MDParser();
+        for (int d = 0; d < 60; d++) {
+            MDDocument document = new MDDocument(parser, TestDocuments.random(random, 80));
+            assertEquals(parser.compile(document.getText()).toString(), document.getHtml().toString());
+            for (int e = 0; e < 400; e++) {
+                String text = document.getText();
+                int offset = random.nextInt(text.length() + 1);
+                int removed = Math.min(random.nextInt(random.nextBoolean() ? 3 : 40), text.length() - offset);
+                String inserted = random.nextInt(4) == 0 ? "" : TestDocuments.PIECES[random.nextInt(TestDocuments.PIECES.length)]
+                        + (random.nextBoolean() ? TestDocuments.PIECES[random.nextInt(TestDocuments.PIECES.length)] : "");
+                document.edit(offset, removed, inserted);
+                String edit = offset + " -" + removed + " +" + inserted.replace("\n", "\\n");
+                assertEquals(parser.compile(document.getText()).toString(), document.getHtml().toString(), () -> "after " + edit + " in " + text);
+            }
+        }
+    }
+}
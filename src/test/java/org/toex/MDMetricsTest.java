@@ -0,0 +1,62 @@
+package org.toex;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MDMetricsTest {
+
+    private static final String MARKDOWN = "# Title\n\n- item\n  - nested\n\n> quote\n\nText with *emphasis*.\n\n```\ncode\n```\n";
+
+    @Test
+    void percentilesCoverTheLastDocuments() {
+        MDMetrics metrics = new MDMetrics();
+        MDParser parser = new MDParser().setMetrics(metrics);
+        int documents = MDMetrics.WINDOW + 100;
+        long lines = 0;
+        for (int d = 0; d < documents; d++) {
+            String md = "line\n\n".repeat(d < 100 ? 50 : 1 + d % 10); // the long documents fall out of the window
+            parser.compile(md);
+            lines += new LineCursor(parser.precompile(md)).count();
+        }
+        assertEquals(documents, metrics.count(MDMetrics.Metric.LINES)); // counts and totals cover all documents
+        assertEquals(lines, metrics.total(MDMetrics.Metric.LINES));
+        assertEquals(new LineCursor(parser.precompile("line\n\n".repeat(10))).count(), metrics.percentile(MDMetrics.Metric.LINES, 100));
+        metrics.reset();
+        assertEquals(0, metrics.count(MDMetrics.Metric.LINES));
+        assertEquals(0, metrics.total(MDMetrics.Metric.LINES));
+        assertEquals(0, metrics.percentile(MDMetrics.Metric.LINES, 50));
+    }
+
+    @Test
+    void everyEntryPointIsCounted(@TempDir Path dir) throws IOException {
+        MDMetrics metrics = new MDMetrics();
+        MDParser parser = new MDParser().setMetrics(metrics);
+        parser.compile(MARKDOWN.repeat(100));
+        long nodes = metrics.total(MDMetrics.Metric.NODES);
+
+        parser.compileParallel(MARKDOWN.repeat(100));
+        assertEquals(2, metrics.count(MDMetrics.Metric.NODES));
+        assertEquals(2 * nodes, metrics.total(MDMetrics.Metric.NODES)); // the parts add up to the same tree
+
+        Path file = Files.writeString(dir.resolve("a.md"), MARKDOWN.repeat(100));
+        parser.writeDocument(file, new StringBuilder());
+        assertEquals(3, metrics.count(MDMetrics.Metric.NODES));
+        assertEquals(3 * nodes, metrics.total(MDMetrics.Metric.NODES));
+        assertEquals(1, metrics.count(MDMetrics.Metric.RENDER_NANOS));
+        parser.stream(file, new MDListener() {});
+        assertEquals(4, metrics.count(MDMetrics.Metric.NODES));
+        assertEquals(4 * nodes, metrics.total(MDMetrics.Metric.NODES));
+
+        MDDocument document = new MDDocument(parser, MARKDOWN.repeat(100));
+        assertEquals(5, metrics.count(MDMetrics.Metric.NODES));
+        assertEquals(5 * nodes, metrics.total(MDMetrics.Metric.NODES));
+        document.edit(0, 0, "More ");
+        assertEquals(6, metrics.count(MDMetrics.Metric.NODES));
+    }
+}
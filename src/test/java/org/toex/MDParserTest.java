@@ -0,0 +1,66 @@
+package org.toex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MDParserTest {
+
+    @Test
+    void millionLinesOnASmallStack() throws Exception { // the container stack is on the heap, the call depth does not grow with the lines
+        String[] lines = Arrays.stream(TestDocuments.LINES).filter(line -> !line.isEmpty()).toArray(String[]::new); // one block that never ends
+        StringBuilder md = new StringBuilder();
+        for (int line = 0; line < 1_000_000; line++) {
+            md.append(lines[line % lines.length]).append('\n');
+        }
+        int[] headings = new int[1];
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread thread = new Thread(null, () -> {
+            try {
+                new MDParser().compile(md.toString(), new MDListener() {
+                    @Override
+                    public void startHeading(int level) {
+                        headings[0]++;
+                    }
+                });
+            } catch (Throwable e) {
+                error.set(e);
+            }
+        }, "small stack", 512 * 1024);
+        thread.start();
+        thread.join();
+        if (error.get() != null) {
+            throw new AssertionError(error.get());
+        }
+        assertEquals(2 * (1_000_000 / lines.length), headings[0]); // both headings of every round
+    }
+
+    @Test
+    void deepQuotesRenderOnTheDefaultStack() { // writing the tree keeps the open elements on the heap as well
+        HTMLElement html = new MDParser().compile(">".repeat(5000) + " x");
+        for (String out : new String[]{html.toString(), html.createDocument()}) {
+            assertEquals(5000, out.split("<blockquote>", -1).length - 1);
+            assertEquals(5000, out.split("</blockquote>", -1).length - 1);
+            assertTrue(out.contains("<p>x</p>"));
+        }
+    }
+
+    @Test
+    void hugeCodeBlockOnTheDefaultStack() { // the fence is found line by line, a regex over the body would recurse once per line
+        StringJoiner code = new StringJoiner("\n");
+        for (int line = 0; line < 100_000; line++) {
+            code.add("int x" + line + " = " + line + ";");
+        }
+        HTMLElement html = new MDParser().compile("```java\n" + code + "\n```\n");
+        assertEquals(1, html.childCount());
+        HTMLElement pre = (HTMLElement) html.children().get(0);
+        assertEquals("pre", pre.tag.getName());
+        assertEquals("java", pre.getKey("class"));
+        assertEquals(code.toString(), ((HTMLText) pre.children().get(0)).getData());
+    }
+}
@@ -0,0 +1,67 @@
+package org.toex;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MarkdownFileTest {
+
+    private static final String MARKDOWN = """
+            # Title
+
+            A paragraph
+            over two lines.
+
+            - item
+              - nested
+            > quote
+
+            ```java
+            int x = 1;
+            ```
+            """;
+
+    @Test
+    void writesTheDocumentOfCompile(@TempDir Path dir) throws IOException {
+        Path file = Files.writeString(dir.resolve("a.md"), MARKDOWN.repeat(50));
+        MDParser parser = new MDParser();
+        StringBuilder out = new StringBuilder();
+        new MarkdownFile(parser, file, 64).writeDocument(out); // small windows, many parts
+        assertEquals(parser.compile(MARKDOWN.repeat(50)).createDocument(), out.toString());
+    }
+
+    @Test
+    void supplementaryCharactersNeedTwoChars(@TempDir Path dir) throws IOException {
+        String md = "a " + new String(Character.toChars(0x1F600)) + " b\n\nmore text.\n"; // odd length, the pair starts at both ends of a window
+        Path file = Files.writeString(dir.resolve("a.md"), md.repeat(10));
+        MDParser parser = new MDParser();
+        StringBuilder out = new StringBuilder();
+        new MarkdownFile(parser, file, 2).writeDocument(out); // the pair fills the window
+        assertEquals(parser.compile(md.repeat(10)).createDocument(), out.toString());
+        StringBuilder truncated = new StringBuilder();
+        assertThrows(IllegalArgumentException.class, () -> new MarkdownFile(parser, file, 1).writeDocument(truncated));
+        assertEquals("", truncated.toString());
+    }
+
+    @Test
+    void missingFileWritesNothing(@TempDir Path dir) {
+        StringBuilder out = new StringBuilder();
+        assertThrows(IOException.class, () -> new MDParser().writeDocument(dir.resolve("missing.md"), out));
+        assertEquals("", out.toString());
+    }
+
+    @Test
+    void streamedEventsBuildTheSameTree(@TempDir Path dir) throws IOException {
+        Path file = Files.writeString(dir.resolve("a.md"), MARKDOWN.repeat(20));
+        MDParser parser = new MDParser();
+        TreeBuilder tree = new TreeBuilder();
+        parser.stream(file, tree);
+        assertEquals(parser.compile(MARKDOWN.repeat(20)).toString(), tree.getRoot().toString());
+    }
+}
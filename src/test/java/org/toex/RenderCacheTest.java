@@ -0,0 +1,108 @@
+package org.toex;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RenderCacheTest {
+
+    private final MDParser parser = new MDParser();
+
+    @Test
+    void rendersLikeTheParser(@TempDir Path dir) throws IOException {
+        Random random = new Random(12);
+        for (RenderCache cache : new RenderCache[]{RenderCache.inMemory(1 << 20), RenderCache.onDisk(dir, 1 << 20)}) {
+            for (int d = 0; d < 200; d++) {
+                String md = TestDocuments.random(random, 40);
+                for (int run = 0; run < 2; run++) { // rendered, then from the cache
+                    assertEquals(parser.compile(md).toString(), cache.render(parser, md), md);
+                    assertEquals(parser.compile(md).createDocument(), cache.renderDocument(parser, md), md);
+                }
+            }
+        }
+    }
+
+    @Test
+    void countsHitsAndMisses() {
+        RenderCache cache = RenderCache.inMemory(1 << 20);
+        String md = "# Title\n\nA paragraph.\n\n> quote\n";
+        int blocks = parser.splitBlocks(parser.precompile(md)).size();
+        cache.render(parser, md);
+        assertEquals(0, cache.hits());
+        assertEquals(blocks, cache.misses());
+        cache.render(parser, md);
+        assertEquals(blocks, cache.hits());
+        assertEquals(blocks, cache.misses());
+        cache.renderDocument(parser, md); // indented differently, so cached apart
+        assertEquals(blocks, cache.hits());
+        assertEquals(2 * blocks, cache.misses());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedInMemory() {
+        RenderCache cache = RenderCache.inMemory(2 * blockSize());
+        evictsTheLeastRecentlyUsed(cache);
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedOnDisk(@TempDir Path dir) throws IOException {
+        RenderCache cache = RenderCache.onDisk(dir, 2 * blockSize());
+        evictsTheLeastRecentlyUsed(cache);
+        assertEquals(2, files(dir));
+    }
+
+    @Test
+    void reopenedCacheKeepsTheOrder(@TempDir Path dir) throws IOException {
+        RenderCache first = RenderCache.onDisk(dir, 2 * blockSize());
+        first.render(parser, "x1\n");
+        first.render(parser, "x2\n");
+        first.render(parser, "x1\n"); // x2 is now the oldest
+
+        RenderCache second = RenderCache.onDisk(dir, 2 * blockSize());
+        assertEquals(2 * blockSize(), second.size());
+        second.render(parser, "x3\n");
+        assertEquals(1, second.evictions());
+        second.render(parser, "x1\n");
+        assertEquals(1, second.hits());
+        second.render(parser, "x2\n"); // evicted by x3
+        assertEquals(2, second.misses());
+
+        RenderCache third = RenderCache.onDisk(dir, blockSize()); // smaller, only the newest block is kept
+        assertEquals(1, third.evictions());
+        assertEquals(1, files(dir));
+        third.render(parser, "x2\n");
+        assertEquals(1, third.hits());
+    }
+
+    private void evictsTheLeastRecentlyUsed(RenderCache cache) {
+        cache.render(parser, "x1\n");
+        cache.render(parser, "x2\n");
+        cache.render(parser, "x1\n"); // x2 is now the oldest
+        cache.render(parser, "x3\n");
+        assertEquals(1, cache.evictions());
+        assertEquals(2 * blockSize(), cache.size());
+        cache.render(parser, "x1\n");
+        assertEquals(2, cache.hits());
+        cache.render(parser, "x2\n");
+        assertEquals(4, cache.misses()); // x1, x2, x3 and x2 again
+    }
+
+    private long blockSize() { // every block xN renders to the same size
+        RenderCache cache = RenderCache.inMemory(Long.MAX_VALUE);
+        cache.render(parser, "x1\n");
+        return cache.size();
+    }
+
+    private static long files(Path dir) throws IOException {
+        try (Stream<Path> list = Files.list(dir)) {
+            return list.filter(p -> p.getFileName().toString().endsWith(".html")).count();
+        }
+    }
+}
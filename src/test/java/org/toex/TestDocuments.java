@@ -0,0 +1,26 @@
+package org.toex;
+
+import java.util.Random;
+
+final class TestDocuments { // the Markdown the tests generate, all of it from the same lines
+
+    static final String[] LINES = { // headings, nested lists, quotes, code and every inline rule
+            "# Heading", "## Sub *heading*", "- item", "  - nested item", "    - deeper item", "1. one", "2) two",
+            "> quote", "> > deeper", "```java", "int x = 1;", "```", "", "plain text", "a paragraph with *emphasis*",
+            "**bold** and *em*", "~~gone~~ `code`", "[link](href) ![image](src)", "continued line", "***mixed* text**",
+            "   indented", ""};
+
+    static final String[] PIECES = {"\n", "\n\n", "# ", "## h\n", "- ", "  - ", "1. ", "> ", "```", "```java\n", // what random edits insert
+            "**", "*", "~~", "`", "[a](b)", "![i](s)", "text ", "   ", "x\n"};
+
+    private TestDocuments() {
+    }
+
+    static String random(Random random, int maxLines) { // 1 to maxLines lines in random order
+        StringBuilder md = new StringBuilder();
+        for (int line = random.nextInt(maxLines); line >= 0; line--) {
+            md.append(LINES[random.nextInt(LINES.length)]).append('\n');
+        }
+        return md.toString();
+    }
+}